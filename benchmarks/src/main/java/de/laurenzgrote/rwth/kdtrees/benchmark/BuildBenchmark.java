@@ -0,0 +1,58 @@
+package de.laurenzgrote.rwth.kdtrees.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import de.laurenzgrote.rwth.kdtrees.data.*;
+
+/**
+ * BuildBenchmark. Construction of a whole tree, for all three node types.
+ * The input is loaded once (in the given encoding), only the tree is built per invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BuildBenchmark {
+
+    public enum Tree {
+        MAXDIFF, MEDIAN, SORTED
+    }
+
+    @Param({ "s1.mat", "s2.mat", "1000x2", "100000x16", "1000000x2", "10000000x2", "10000x256" })
+    public String input;
+
+    @Param({ "MAXDIFF", "MEDIAN", "SORTED" })
+    public Tree tree;
+
+    @Param({ "DOUBLE", "FLOAT", "FIXED16" })
+    public Encoding encoding;
+
+    @Param({ "0.05" })
+    public double treshMaxdiff;
+
+    @Param({ "0.01" })
+    public double treshVariance;
+
+    private DataMatrix matrix;
+
+    @Setup(Level.Trial)
+    public void load() throws Exception {
+        matrix = Datasets.matrix(input).encode(encoding);
+    }
+
+    @Benchmark
+    public TreeNode build() {
+        switch (tree) {
+            case MAXDIFF:
+                return new MaxdiffKDTreeNode(matrix, treshMaxdiff, treshVariance);
+            case MEDIAN:
+                return new MedianKDTreeNode(matrix, treshMaxdiff, treshVariance);
+            default:
+                return new SortedKDTreeNode(matrix, treshMaxdiff, treshVariance);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package de.laurenzgrote.rwth.kdtrees.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import de.laurenzgrote.rwth.kdtrees.data.DataMatrix;
+import de.laurenzgrote.rwth.kdtrees.generator.DatasetGenerator;
+import de.laurenzgrote.rwth.kdtrees.io.DataSetFactory;
+import de.laurenzgrote.rwth.kdtrees.io.DenseMatrixWriter;
+import de.laurenzgrote.rwth.kdtrees.io.FileMalformattedException;
+import de.laurenzgrote.rwth.kdtrees.io.MatrixWriter;
+
+/**
+ * Datasets. Inputs of the benchmarks, named like the input parameter:
+ * Either a bundled matrix ("s1.mat"), looked up in the directory given by the
+ * system property kdtrees.data (default: working directory),
+ * or a synthetic one ("100000x16": 100000 points of dimension 16).
+ * Synthetic inputs are gaussian blobs, unless another distribution of the
+ * DatasetGenerator is prefixed ("sorted:100000x16").
+ * They are generated with a fixed seed, so every run uses the same data.
+ */
+final class Datasets {
+
+    private static final long SEED = 42;
+    private static final int BLOBS = 16;
+    private static final double BLOB_STDDEV = 0.03;
+
+    private Datasets() {
+    }
+
+    /**
+     * @param input Name of the input
+     * @return whether it is a synthetic input
+     */
+    static boolean isSynthetic(String input) {
+        return input.matches("([a-z]+:)?\\d+x\\d+");
+    }
+
+    /**
+     * @param input Name of the input
+     * @return Matrix of the input
+     */
+    static DataMatrix matrix(String input) throws IOException, FileMalformattedException {
+        if (!isSynthetic(input))
+            return DataSetFactory.readMatrixFromDenseMatrix(bundled(input));
+        DatasetGenerator generator = generator(input);
+        ColumnCollector columns = new ColumnCollector(generator.getRows(), generator.getDim());
+        generator.generate(columns, null);
+        return new DataMatrix(columns.columns);
+    }
+
+    /**
+     * @param input Name of the input
+     * @return Dense matrix file of the input, synthetic ones are written to a temporary file
+     */
+    static Path denseMatrixFile(String input) throws IOException {
+        if (!isSynthetic(input))
+            return bundled(input);
+        Path path = Files.createTempFile("kdtrees-" + input.replace(':', '-'), ".mat");
+        path.toFile().deleteOnExit();
+        DatasetGenerator generator = generator(input);
+        try (MatrixWriter writer = new DenseMatrixWriter(path, generator.getRows(), generator.getDim())) {
+            generator.generate(writer, null);
+        }
+        return path;
+    }
+
+    private static Path bundled(String name) {
+        return Paths.get(System.getProperty("kdtrees.data", "."), name);
+    }
+
+    /**
+     * @return Generator of a synthetic input
+     */
+    private static DatasetGenerator generator(String input) {
+        DatasetGenerator.Distribution distribution = DatasetGenerator.Distribution.BLOBS;
+        int colon = input.indexOf(':');
+        if (colon >= 0)
+            distribution = DatasetGenerator.Distribution.valueOf(input.substring(0, colon).toUpperCase());
+        String[] size = input.substring(colon + 1).split("x");
+        return new DatasetGenerator(distribution, Integer.parseInt(size[0]), Integer.parseInt(size[1]), SEED)
+                .setClusters(BLOBS)
+                .setStddev(BLOB_STDDEV);
+    }
+
+    /**
+     * Collects generated rows into columns on the heap
+     */
+    private static final class ColumnCollector implements MatrixWriter {
+
+        private final double[][] columns;
+        private int row;
+
+        ColumnCollector(int rows, int dim) {
+            this.columns = new double[dim][rows];
+        }
+
+        @Override
+        public void writeRow(double[] values) {
+            for (int feature = 0; feature < columns.length; feature++)
+                columns[feature][row] = values[feature];
+            row++;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
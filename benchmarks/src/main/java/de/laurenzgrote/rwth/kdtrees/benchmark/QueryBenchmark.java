@@ -0,0 +1,76 @@
+package de.laurenzgrote.rwth.kdtrees.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.laurenzgrote.rwth.kdtrees.data.CompiledTree;
+import de.laurenzgrote.rwth.kdtrees.data.MaxdiffKDTreeNode;
+import de.laurenzgrote.rwth.kdtrees.data.TreeNode;
+
+/**
+ * QueryBenchmark. Lookups in a built maxdiff tree, for a batch of random query points.
+ * Times are per batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+    private static final int BATCH = 1000;
+
+    @Param({ "s1.mat", "s2.mat", "100000x16", "1000000x2" })
+    public String input;
+
+    @Param({ "10" })
+    public int k;
+
+    @Param({ "0.01" })
+    public double radius;
+
+    private TreeNode tree;
+    private CompiledTree compiled;
+    private double[][] points;
+    private int[] clusters;
+
+    @Setup(Level.Trial)
+    public void build() throws Exception {
+        tree = new MaxdiffKDTreeNode(Datasets.matrix(input), 0.05, 0.01);
+        compiled = new CompiledTree(tree);
+        Random random = new Random(7);
+        points = new double[BATCH][tree.getDim()];
+        for (double[] point : points)
+            for (int feature = 0; feature < point.length; feature++)
+                point[feature] = random.nextDouble();
+        clusters = new int[BATCH];
+    }
+
+    @Benchmark
+    public int[] classify() {
+        tree.classifyBatch(points, clusters);
+        return clusters;
+    }
+
+    @Benchmark
+    public int[] classifyCompiled() {
+        compiled.classifyBatch(points, clusters);
+        return clusters;
+    }
+
+    @Benchmark
+    public void kNearest(Blackhole bh) {
+        for (double[] point : points)
+            bh.consume(tree.kNearest(point, k));
+    }
+
+    @Benchmark
+    public void rangeQuery(Blackhole bh) {
+        for (double[] point : points)
+            bh.consume(tree.rangeQuery(point, radius));
+    }
+}
@@ -0,0 +1,50 @@
+package de.laurenzgrote.rwth.kdtrees.benchmark;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import de.laurenzgrote.rwth.kdtrees.data.DataMatrix;
+import de.laurenzgrote.rwth.kdtrees.data.DataPoint;
+import de.laurenzgrote.rwth.kdtrees.io.DataSetFactory;
+
+/**
+ * ReadBenchmark. Parsing of CLUTO dense matrices.
+ * Synthetic inputs are written to a temporary file once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadBenchmark {
+
+    @Param({ "s1.mat", "s2.mat", "100000x16", "1000000x2", "10000x256" })
+    public String input;
+
+    private Path path;
+
+    @Setup(Level.Trial)
+    public void write() throws Exception {
+        path = Datasets.denseMatrixFile(input);
+    }
+
+    @Benchmark
+    public List<DataPoint> readFromDenseMatrix() throws Exception {
+        return DataSetFactory.readFromDenseMatrix(path);
+    }
+
+    @Benchmark
+    public DataMatrix readMatrixFromDenseMatrix() throws Exception {
+        return DataSetFactory.readMatrixFromDenseMatrix(path);
+    }
+
+    @Benchmark
+    public DataMatrix readMatrixParallel() throws Exception {
+        return DataSetFactory.readMatrixFromDenseMatrix(path, ForkJoinPool.commonPool());
+    }
+}
@@ -0,0 +1,51 @@
+package de.laurenzgrote.rwth.kdtrees.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import de.laurenzgrote.rwth.kdtrees.data.DataMatrix;
+import de.laurenzgrote.rwth.kdtrees.data.Kernels;
+import de.laurenzgrote.rwth.kdtrees.data.Selection;
+
+/**
+ * SelectionBenchmark. Selection of the ranks a maxdiff split looks for (5%, median, 95%)
+ * in the first feature, with both kernels. The values are copied per invocation,
+ * since selection reorders them. Whole builds with either kernel: -jvmArgsAppend -Dkdtrees.kernels=scalar
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectionBenchmark {
+
+    @Param({ "s1.mat", "100000x16", "1000000x2", "sorted:1000000x2", "duplicates:1000000x2" })
+    public String input;
+
+    @Param({ "SCALAR", "BRANCH_FREE" })
+    public Kernels kernels;
+
+    private double[] values, copy;
+
+    @Setup(Level.Trial)
+    public void load() throws Exception {
+        DataMatrix matrix = Datasets.matrix(input);
+        values = new double[matrix.getLength()];
+        for (int row = 0; row < values.length; row++)
+            values[row] = matrix.get(row, 0);
+        copy = new double[values.length];
+    }
+
+    @Benchmark
+    public double select() {
+        int length = values.length;
+        double sum = 0.0;
+        for (int k : new int[] { length / 20, length / 2, length - 1 - length / 20 }) {
+            System.arraycopy(values, 0, copy, 0, length);
+            sum += Selection.select(copy, 0, length, k, kernels);
+        }
+        return sum;
+    }
+}
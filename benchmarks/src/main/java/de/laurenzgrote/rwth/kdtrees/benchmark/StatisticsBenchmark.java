@@ -0,0 +1,60 @@
+package de.laurenzgrote.rwth.kdtrees.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.laurenzgrote.rwth.kdtrees.data.DataMatrix;
+import de.laurenzgrote.rwth.kdtrees.data.DataSet;
+import de.laurenzgrote.rwth.kdtrees.data.Encoding;
+import de.laurenzgrote.rwth.kdtrees.data.NodeStatistics;
+
+/**
+ * StatisticsBenchmark. Statistical queries of a DataSet over all features.
+ * statistics measures the construction computing them, welford the accumulation alone
+ * (variances are read from the accumulated statistics), mean the queries of a constructed set.
+ * Values are stored in every encoding, as they would be after loading.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatisticsBenchmark {
+
+    @Param({ "s1.mat", "s2.mat", "1000x2", "100000x16", "1000000x2", "10000x256" })
+    public String input;
+
+    @Param({ "DOUBLE", "FLOAT", "FIXED16" })
+    public Encoding encoding;
+
+    private DataMatrix matrix;
+    private DataSet set;
+
+    @Setup(Level.Trial)
+    public void load() throws Exception {
+        matrix = Datasets.matrix(input).encode(encoding);
+        set = new DataSet(matrix);
+    }
+
+    @Benchmark
+    public DataSet statistics() {
+        return new DataSet(matrix);
+    }
+
+    @Benchmark
+    public NodeStatistics welford() {
+        NodeStatistics stats = new NodeStatistics(matrix.getDim());
+        for (int row = 0; row < matrix.getLength(); row++)
+            stats.add(matrix, row);
+        return stats;
+    }
+
+    @Benchmark
+    public void mean(Blackhole bh) {
+        for (int feature = 0; feature < set.getDim(); feature++)
+            bh.consume(set.getMean(feature));
+    }
+}
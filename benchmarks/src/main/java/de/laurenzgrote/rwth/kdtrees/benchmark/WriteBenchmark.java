@@ -0,0 +1,47 @@
+package de.laurenzgrote.rwth.kdtrees.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import de.laurenzgrote.rwth.kdtrees.data.MaxdiffKDTreeNode;
+import de.laurenzgrote.rwth.kdtrees.data.TreeNode;
+import de.laurenzgrote.rwth.kdtrees.io.ClusterWriter;
+
+/**
+ * WriteBenchmark. Output of a built tree.
+ * Gnuplot output copies profile.gp from the working directory, so run from the repository root.
+ * Only 2D inputs, since gnuplot output is restricted to them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmark {
+
+    @Param({ "s1.mat", "s2.mat", "1000000x2" })
+    public String input;
+
+    @Param({ "GNUPLOT", "CSV", "LABELS" })
+    public ClusterWriter.Format format;
+
+    private TreeNode tree;
+    private Path path;
+
+    @Setup(Level.Trial)
+    public void build() throws Exception {
+        tree = new MaxdiffKDTreeNode(Datasets.matrix(input), 0.05, 0.01);
+        path = Files.createTempFile("kdtrees-clusters", ".txt");
+        path.toFile().deleteOnExit();
+    }
+
+    @Benchmark
+    public Path write() throws Exception {
+        ClusterWriter.write(tree, path, format);
+        return path;
+    }
+}
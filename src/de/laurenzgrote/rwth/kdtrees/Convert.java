@@ -0,0 +1,29 @@
+package de.laurenzgrote.rwth.kdtrees;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import de.laurenzgrote.rwth.kdtrees.io.ColumnarFormat;
+import de.laurenzgrote.rwth.kdtrees.io.FileMalformattedException;
+
+/**
+ * Converts a CLUTO dense matrix into the binary columnar format,
+ * which Main loads without parsing.
+ */
+public class Convert {
+
+    private static final String USAGE = "Usage: Convert <input.mat> <output> [--float]";
+
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length > 3 || (args.length == 3 && !args[2].equals("--float"))) {
+            System.err.println(USAGE);
+            return;
+        }
+        boolean asFloat = args.length == 3;
+        try {
+            ColumnarFormat.convertDenseMatrix(Paths.get(args[0]), Paths.get(args[1]), asFloat);
+        } catch (FileMalformattedException | IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package de.laurenzgrote.rwth.kdtrees;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import de.laurenzgrote.rwth.kdtrees.generator.DatasetGenerator;
+import de.laurenzgrote.rwth.kdtrees.io.ColumnarWriter;
+import de.laurenzgrote.rwth.kdtrees.io.DenseMatrixWriter;
+import de.laurenzgrote.rwth.kdtrees.io.LabelWriter;
+import de.laurenzgrote.rwth.kdtrees.io.MatrixWriter;
+
+/**
+ * Generates a synthetic dataset as CLUTO dense matrix or binary columnar file,
+ * both of which Main reads.
+ */
+public class Generate {
+
+    private static final String USAGE = "Usage: Generate <blobs|uniform|duplicates|sorted> <rows> <dim> <output>"
+            + " [--seed=<seed>] [--format=dense|columnar|columnar-float] [--clusters=<k>] [--stddev=<s>]"
+            + " [--noise=<fraction>] [--decimals=<d>] [--labels=<labels file>]";
+
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.err.println(USAGE);
+            return;
+        }
+        DatasetGenerator.Distribution distribution = DatasetGenerator.Distribution.valueOf(args[0].toUpperCase());
+        int rows = Integer.parseInt(args[1]);
+        int dim = Integer.parseInt(args[2]);
+        Path path = Paths.get(args[3]);
+        long seed = 42;
+        String format = "dense";
+        Path labelsPath = null;
+        int clusters = -1, decimals = -1;
+        double stddev = -1.0, noise = -1.0;
+        for (int i = 4; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            if (option.length != 2) {
+                System.err.println(USAGE);
+                return;
+            }
+            switch (option[0]) {
+                case "--seed":
+                    seed = Long.parseLong(option[1]);
+                    break;
+                case "--format":
+                    format = option[1];
+                    break;
+                case "--clusters":
+                    clusters = Integer.parseInt(option[1]);
+                    break;
+                case "--stddev":
+                    stddev = Double.parseDouble(option[1]);
+                    break;
+                case "--noise":
+                    noise = Double.parseDouble(option[1]);
+                    break;
+                case "--decimals":
+                    decimals = Integer.parseInt(option[1]);
+                    break;
+                case "--labels":
+                    labelsPath = Paths.get(option[1]);
+                    break;
+                default:
+                    System.err.println("Unknown option " + option[0]);
+                    System.err.println(USAGE);
+                    return;
+            }
+        }
+        DatasetGenerator generator = new DatasetGenerator(distribution, rows, dim, seed);
+        if (clusters > 0)
+            generator.setClusters(clusters);
+        if (stddev >= 0.0)
+            generator.setStddev(stddev);
+        if (noise >= 0.0)
+            generator.setNoise(noise);
+        if (decimals > 0)
+            generator.setDecimals(decimals);
+
+        try (MatrixWriter out = open(format, path, rows, dim);
+                LabelWriter labels = labelsPath == null ? null : new LabelWriter(labelsPath)) {
+            generator.generate(out, labels);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static MatrixWriter open(String format, Path path, int rows, int dim) throws IOException {
+        switch (format) {
+            case "dense":
+                return new DenseMatrixWriter(path, rows, dim);
+            case "columnar":
+                return new ColumnarWriter(path, rows, dim, false);
+            case "columnar-float":
+                return new ColumnarWriter(path, rows, dim, true);
+            default:
+                throw new IllegalArgumentException("Unknown format " + format);
+        }
+    }
+}
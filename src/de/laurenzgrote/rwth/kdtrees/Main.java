@@ -3,25 +3,162 @@ package de.laurenzgrote.rwth.kdtrees;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.management.JMException;
 
 import de.laurenzgrote.rwth.kdtrees.data.*;
 import de.laurenzgrote.rwth.kdtrees.io.ClusterWriter;
+import de.laurenzgrote.rwth.kdtrees.io.ColumnarFormat;
 import de.laurenzgrote.rwth.kdtrees.io.DataSetFactory;
 import de.laurenzgrote.rwth.kdtrees.io.FileMalformattedException;
+import de.laurenzgrote.rwth.kdtrees.io.OutOfCoreBuilder;
+import de.laurenzgrote.rwth.kdtrees.io.TreeSnapshot;
+import de.laurenzgrote.rwth.kdtrees.metrics.BuildMetrics;
 
 public class Main {
 
+    private static final String USAGE = "Usage: Main <input.mat|input.kdc|snapshot.kdt> <tresh_maxdiff> <tresh_variance> <output>"
+            + " [--parallelism=<threads>] [--parallel-cutoff=<points>] [--parallel-split-cutoff=<points>] [--format=gnuplot|csv|labels]"
+            + " [--snapshot=<snapshot.kdt>] [--metrics=<metrics.json>] [--jmx]"
+            + " [--memory-budget=<MB>] [--spill-dir=<dir>] [--sampling=<points>] [--confidence=<probability>]"
+            + " [--encoding=double|float|fixed16]";
+
     public static void main(String[] args) {
+        if (args.length < 4) {
+            System.err.println(USAGE);
+            return;
+        }
         Path path = Paths.get(args[0]);
         double tresh_maxdiff = Double.parseDouble(args[1]);
         double tresh_variance = Double.parseDouble(args[2]);
+        TreeParameters params = new TreeParameters(tresh_maxdiff, tresh_variance);
+        // Optional flags
+        int parallelism = 1; // sequential
+        int parallelCutoff = TreeParameters.DEFAULT_PARALLEL_CUTOFF;
+        int parallelSplitCutoff = TreeParameters.DEFAULT_PARALLEL_SPLIT_CUTOFF;
+        ClusterWriter.Format format = ClusterWriter.Format.GNUPLOT;
+        Path snapshot = null;
+        Path metricsPath = null;
+        boolean jmx = false;
+        long memoryBudget = 0; // in memory
+        Path spillDir = null;
+        int samplingThreshold = 0; // never
+        double confidence = 0.99;
+        Encoding encoding = Encoding.DOUBLE;
+        for (int i = 4; i < args.length; i++) {
+            if (args[i].equals("--jmx")) {
+                jmx = true;
+                continue;
+            }
+            String[] option = args[i].split("=", 2);
+            if (option.length != 2) {
+                System.err.println(USAGE);
+                return;
+            }
+            switch (option[0]) {
+                case "--parallelism":
+                    parallelism = Integer.parseInt(option[1]);
+                    break;
+                case "--parallel-cutoff":
+                    parallelCutoff = Integer.parseInt(option[1]);
+                    break;
+                case "--parallel-split-cutoff":
+                    parallelSplitCutoff = Integer.parseInt(option[1]);
+                    break;
+                case "--format":
+                    format = ClusterWriter.Format.valueOf(option[1].toUpperCase());
+                    break;
+                case "--snapshot":
+                    snapshot = Paths.get(option[1]);
+                    break;
+                case "--metrics":
+                    metricsPath = Paths.get(option[1]);
+                    break;
+                case "--memory-budget":
+                    memoryBudget = Long.parseLong(option[1]) << 20;
+                    break;
+                case "--spill-dir":
+                    spillDir = Paths.get(option[1]);
+                    break;
+                case "--sampling":
+                    samplingThreshold = Integer.parseInt(option[1]);
+                    break;
+                case "--confidence":
+                    confidence = Double.parseDouble(option[1]);
+                    break;
+                case "--encoding":
+                    encoding = Encoding.valueOf(option[1].toUpperCase());
+                    break;
+                default:
+                    System.err.println("Unknown option " + option[0]);
+                    System.err.println(USAGE);
+                    return;
+            }
+        }
+        if (tresh_maxdiff < 10 * encoding.getResolution())
+            System.err.println("Warning: tresh_maxdiff is close to the resolution of " + encoding + " values");
+        if (memoryBudget > 0 && encoding != Encoding.DOUBLE)
+            System.err.println("Warning: --encoding only applies to trees built in memory");
+        if (memoryBudget > 0 && samplingThreshold > 0)
+            System.err.println("Warning: with --memory-budget, --sampling only applies to nodes fitting the budget,"
+                    + " the leafs may differ from a construction in memory");
+        if (samplingThreshold > 0)
+            params.setSampling(samplingThreshold, confidence);
+        ForkJoinPool pool = null;
+        if (parallelism > 1) {
+            pool = new ForkJoinPool(parallelism);
+            params.setParallel(pool, parallelCutoff).setParallelSplitCutoff(parallelSplitCutoff);
+        }
+        // Construction is only measured if asked for
+        BuildMetrics metrics = null;
+        if (metricsPath != null || jmx) {
+            metrics = new BuildMetrics();
+            params.setListener(metrics);
+        }
+        OutOfCoreBuilder outOfCore = null;
         try {
-            List<DataPoint> dPoints = DataSetFactory.readFromDenseMatrix(path);
-            TreeNode dSet = new MaxdiffKDTreeNode(dPoints, tresh_maxdiff, tresh_variance);
-            ClusterWriter.writeToGnuplot(dSet, Paths.get(args[3]));
-        } catch (FileMalformattedException | DataPointMalformattedException | IOException e) {
+            if (jmx)
+                metrics.register();
+            TreeNode dSet;
+            if (TreeSnapshot.isSnapshot(path)) {
+                // Tree was built before, tresholds are those of the snapshot
+                dSet = TreeSnapshot.load(path);
+            } else if (memoryBudget > 0) {
+                // Nodes exceeding the budget are split by passes over spill files
+                outOfCore = new OutOfCoreBuilder(params, spillDir, memoryBudget);
+                dSet = outOfCore.build(path);
+            } else {
+                DataMatrix matrix;
+                if (ColumnarFormat.isColumnar(path)) {
+                    // Binary columns are mapped, not parsed
+                    matrix = ColumnarFormat.map(path);
+                } else if (pool == null) {
+                    matrix = DataSetFactory.readMatrixFromDenseMatrix(path);
+                } else {
+                    matrix = DataSetFactory.readMatrixFromDenseMatrix(path, pool);
+                }
+                if (encoding != Encoding.DOUBLE)
+                    matrix = matrix.encode(encoding);
+                dSet = new MaxdiffKDTreeNode(matrix, params);
+            }
+            if (metricsPath != null)
+                metrics.writeJson(metricsPath);
+            if (snapshot != null)
+                TreeSnapshot.write(dSet, snapshot, true);
+            ClusterWriter.write(dSet, Paths.get(args[3]), format);
+        } catch (FileMalformattedException | IOException | JMException e) {
             e.printStackTrace();
+        } finally {
+            if (pool != null)
+                pool.shutdown();
+            if (outOfCore != null) {
+                try {
+                    outOfCore.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
         }
     }
 }
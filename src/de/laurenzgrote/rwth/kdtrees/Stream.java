@@ -0,0 +1,251 @@
+package de.laurenzgrote.rwth.kdtrees;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import de.laurenzgrote.rwth.kdtrees.data.DataPointMalformattedException;
+import de.laurenzgrote.rwth.kdtrees.data.TreeParameters;
+import de.laurenzgrote.rwth.kdtrees.io.DenseRowReader;
+import de.laurenzgrote.rwth.kdtrees.io.FileMalformattedException;
+import de.laurenzgrote.rwth.kdtrees.io.TreeSnapshot;
+import de.laurenzgrote.rwth.kdtrees.stream.StreamSnapshot;
+import de.laurenzgrote.rwth.kdtrees.stream.StreamingClusterer;
+
+/**
+ * Clusters a live feed of rows (CLUTO dense matrix syntax) from stdin or from localhost connections.
+ * Rows are folded in by mini-batches, only the latest of them are clustered: the latest window rows
+ * and up to window older ones, which are dropped once the tree is rebuilt (see StreamingClusterer).
+ * Every interval a snapshot of the tree is written (see TreeSnapshot, Main takes it as input),
+ * replacing the previous one at once, so readers of the file never see a partial snapshot.
+ * A connection to the port starts with a header line like a file does, connections are served one after another.
+ */
+public class Stream {
+    private static final Logger LOG = Logger.getLogger(Stream.class.getName());
+
+    private static final String USAGE = "Usage: Stream <tresh_maxdiff> <tresh_variance> <snapshot.kdt>"
+            + " [--port=<port>] [--batch=<rows>] [--interval=<ms>] [--window=<points>]"
+            + "\n(the latest window points are clustered, plus up to window older ones until the next rebuild)";
+
+    // Rows read but not yet folded, before the reader has to wait
+    private static final int QUEUE_BATCHES = 4;
+    // Marks the end of the feed in the queue
+    private static final double[] END = new double[0];
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println(USAGE);
+            return;
+        }
+        double tresh_maxdiff = Double.parseDouble(args[0]);
+        double tresh_variance = Double.parseDouble(args[1]);
+        Path snapshotPath = Paths.get(args[2]);
+        // Optional flags
+        int port = -1; // stdin
+        int batchSize = 1000;
+        long interval = 1000;
+        int window = 100000;
+        for (int i = 3; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            if (option.length != 2) {
+                System.err.println(USAGE);
+                return;
+            }
+            switch (option[0]) {
+                case "--port":
+                    port = Integer.parseInt(option[1]);
+                    break;
+                case "--batch":
+                    batchSize = Integer.parseInt(option[1]);
+                    break;
+                case "--interval":
+                    interval = Long.parseLong(option[1]);
+                    break;
+                case "--window":
+                    window = Integer.parseInt(option[1]);
+                    break;
+                default:
+                    System.err.println("Unknown option " + option[0]);
+                    System.err.println(USAGE);
+                    return;
+            }
+        }
+        BlockingQueue<double[]> queue = new ArrayBlockingQueue<>(QUEUE_BATCHES * batchSize);
+        Feed feed = new Feed(queue, port);
+        try {
+            // Dimension is known from the first header
+            int dim = feed.open();
+            Thread reader = new Thread(feed, "feed");
+            reader.setDaemon(true);
+            reader.start();
+            StreamingClusterer clusterer = new StreamingClusterer(dim, window,
+                    new TreeParameters(tresh_maxdiff, tresh_variance));
+            fold(clusterer, queue, batchSize, interval, snapshotPath);
+        } catch (FileMalformattedException | IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Folds the rows of the queue by batches until the end of the feed, publishing a snapshot every interval.
+     * A batch is folded once it is full or once the next snapshot is due.
+     */
+    private static void fold(StreamingClusterer clusterer, BlockingQueue<double[]> queue, int batchSize,
+            long interval, Path snapshotPath) throws IOException, InterruptedException {
+        List<double[]> batch = new ArrayList<>(batchSize);
+        long nextSnapshot = System.currentTimeMillis() + interval;
+        boolean end = false;
+        while (!end) {
+            long wait = nextSnapshot - System.currentTimeMillis();
+            double[] row = wait > 0 ? queue.poll(wait, TimeUnit.MILLISECONDS) : queue.poll();
+            if (row != null) {
+                batch.add(row);
+                queue.drainTo(batch, batchSize - batch.size());
+            }
+            if (!batch.isEmpty() && batch.get(batch.size() - 1) == END) {
+                batch.remove(batch.size() - 1);
+                end = true;
+            }
+            boolean due = System.currentTimeMillis() >= nextSnapshot;
+            if (batch.size() >= batchSize || ((due || end) && !batch.isEmpty())) {
+                try {
+                    clusterer.fold(batch);
+                } catch (DataPointMalformattedException e) {
+                    // Checked by the reader already
+                    LOG.warning("Point not folded: " + e.getMessage());
+                }
+                batch.clear();
+            }
+            if (due || end) {
+                writeSnapshot(clusterer, snapshotPath);
+                nextSnapshot = System.currentTimeMillis() + interval;
+            }
+        }
+    }
+
+    /**
+     * Publishes a snapshot and writes the tree, replacing the previous file at once
+     */
+    private static void writeSnapshot(StreamingClusterer clusterer, Path snapshotPath) throws IOException {
+        StreamSnapshot previous = clusterer.getSnapshot();
+        if (previous != null && previous.getPointsSeen() == clusterer.getPointsSeen())
+            return; // nothing new
+        StreamSnapshot snapshot = clusterer.publish();
+        if (snapshot == null)
+            return; // nothing folded yet
+        Path temp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        TreeSnapshot.write(clusterer.getTree(), temp, true);
+        Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        System.out.println("Snapshot: " + snapshot.getPointsSeen() + " points seen, " + snapshot.getLength()
+                + " clustered, cluster count: " + snapshot.getClusterCount());
+    }
+
+    /**
+     * Reads rows of stdin or of the connections to a port into the queue.
+     * Malformatted rows are logged and skipped.
+     */
+    private static final class Feed implements Runnable {
+        private final BlockingQueue<double[]> queue;
+        private final int port;
+        private ServerSocket server;
+        private DenseRowReader reader;
+        private int dim;
+
+        Feed(BlockingQueue<double[]> queue, int port) {
+            this.queue = queue;
+            this.port = port;
+        }
+
+        /**
+         * Opens stdin or waits for the first connection
+         * @return Dimension of the rows
+         */
+        int open() throws IOException, FileMalformattedException {
+            if (port < 0) {
+                reader = new DenseRowReader(System.in, "stdin");
+            } else {
+                server = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+                reader = accept();
+            }
+            dim = reader.readHeader();
+            return dim;
+        }
+
+        private DenseRowReader accept() throws IOException {
+            Socket socket = server.accept();
+            InputStream in = socket.getInputStream(); // closed with the reader
+            return new DenseRowReader(in, "localhost:" + port);
+        }
+
+        /**
+         * Waits for the next connection sending rows of the dimension
+         */
+        private DenseRowReader acceptNext() throws IOException {
+            while (true) {
+                DenseRowReader next = accept();
+                try {
+                    if (next.readHeader() == dim)
+                        return next;
+                    LOG.warning("Connection with rows of another dimension closed");
+                } catch (FileMalformattedException e) {
+                    LOG.warning(e.getMessage());
+                }
+                next.close();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    readRows();
+                    if (server == null)
+                        break; // stdin is read once
+                    reader = acceptNext();
+                }
+            } catch (IOException e) {
+                LOG.severe("Feed failed: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                queue.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Reads rows until the end of the current stream
+         */
+        private void readRows() throws IOException, InterruptedException {
+            try (DenseRowReader current = reader) {
+                while (true) {
+                    try {
+                        double[] row = current.next();
+                        if (row == null)
+                            return;
+                        queue.put(row);
+                    } catch (FileMalformattedException e) {
+                        LOG.warning(e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+}
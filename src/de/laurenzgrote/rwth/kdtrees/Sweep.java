@@ -0,0 +1,124 @@
+package de.laurenzgrote.rwth.kdtrees;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+
+import de.laurenzgrote.rwth.kdtrees.data.*;
+import de.laurenzgrote.rwth.kdtrees.io.ClusterWriter;
+import de.laurenzgrote.rwth.kdtrees.io.ColumnarFormat;
+import de.laurenzgrote.rwth.kdtrees.io.DataSetFactory;
+import de.laurenzgrote.rwth.kdtrees.io.FileMalformattedException;
+
+/**
+ * Clusters an input for every pair of the given tresholds, loading it and building shared nodes once.
+ * Writes the clustering of every pair to <output>_<tresh_maxdiff>_<tresh_variance>
+ * and cluster count, SSE and cluster sizes of all pairs to <output>_summary.csv.
+ */
+public class Sweep {
+
+    private static final String USAGE = "Usage: Sweep <input.mat|input.kdc> <tresh_maxdiff,...> <tresh_variance,...> <output>"
+            + " [--parallelism=<threads>] [--parallel-cutoff=<points>] [--format=gnuplot|csv|labels]"
+            + " [--encoding=double|float|fixed16]";
+
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.err.println(USAGE);
+            return;
+        }
+        Path path = Paths.get(args[0]);
+        String[] maxdiffArgs = args[1].split(",");
+        String[] varianceArgs = args[2].split(",");
+        double[] treshMaxdiff = new double[maxdiffArgs.length];
+        for (int i = 0; i < maxdiffArgs.length; i++)
+            treshMaxdiff[i] = Double.parseDouble(maxdiffArgs[i]);
+        double[] treshVariance = new double[varianceArgs.length];
+        for (int i = 0; i < varianceArgs.length; i++)
+            treshVariance[i] = Double.parseDouble(varianceArgs[i]);
+        String output = args[3];
+        // Optional flags
+        int parallelism = 1; // sequential
+        int parallelCutoff = TreeParameters.DEFAULT_PARALLEL_CUTOFF;
+        ClusterWriter.Format format = ClusterWriter.Format.GNUPLOT;
+        Encoding encoding = Encoding.DOUBLE;
+        for (int i = 4; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            if (option.length != 2) {
+                System.err.println(USAGE);
+                return;
+            }
+            switch (option[0]) {
+                case "--parallelism":
+                    parallelism = Integer.parseInt(option[1]);
+                    break;
+                case "--parallel-cutoff":
+                    parallelCutoff = Integer.parseInt(option[1]);
+                    break;
+                case "--format":
+                    format = ClusterWriter.Format.valueOf(option[1].toUpperCase());
+                    break;
+                case "--encoding":
+                    encoding = Encoding.valueOf(option[1].toUpperCase());
+                    break;
+                default:
+                    System.err.println("Unknown option " + option[0]);
+                    System.err.println(USAGE);
+                    return;
+            }
+        }
+        // Same check as in Main, for every treshold of the grid
+        for (int i = 0; i < treshMaxdiff.length; i++)
+            if (treshMaxdiff[i] < 10 * encoding.getResolution())
+                System.err.println("Warning: tresh_maxdiff " + maxdiffArgs[i] + " is close to the resolution of "
+                        + encoding + " values");
+        // Tresholds of the parameters are those of the settings
+        TreeParameters params = new TreeParameters(0.0, 0.0);
+        ForkJoinPool pool = null;
+        if (parallelism > 1) {
+            pool = new ForkJoinPool(parallelism);
+            params.setParallel(pool, parallelCutoff);
+        }
+        try {
+            DataMatrix matrix;
+            if (ColumnarFormat.isColumnar(path)) {
+                matrix = ColumnarFormat.map(path);
+            } else if (pool == null) {
+                matrix = DataSetFactory.readMatrixFromDenseMatrix(path);
+            } else {
+                matrix = DataSetFactory.readMatrixFromDenseMatrix(path, pool);
+            }
+            if (encoding != Encoding.DOUBLE)
+                matrix = matrix.encode(encoding);
+            ThresholdSweep sweep = ThresholdSweep.grid(matrix, treshMaxdiff, treshVariance, params);
+            try (BufferedWriter out = Files.newBufferedWriter(Paths.get(output + "_summary.csv"))) {
+                out.write("tresh_maxdiff,tresh_variance,clusters,sse,sizes\n");
+                for (int setting = 0; setting < sweep.getSettingCount(); setting++) {
+                    // Named like the tresholds were given
+                    String maxdiff = maxdiffArgs[setting / varianceArgs.length];
+                    String variance = varianceArgs[setting % varianceArgs.length];
+                    TreeNode tree = sweep.getTree(setting);
+                    ClusterWriter.write(tree, Paths.get(output + "_" + maxdiff + "_" + variance), format);
+                    StringBuilder line = new StringBuilder();
+                    line.append(maxdiff).append(',').append(variance).append(',');
+                    line.append(tree.getLeafCount()).append(',');
+                    line.append(ThresholdSweep.getSquaredError(tree)).append(',');
+                    int[] sizes = ThresholdSweep.getClusterSizes(tree);
+                    for (int i = 0; i < sizes.length; i++) {
+                        if (i > 0)
+                            line.append(' ');
+                        line.append(sizes[i]);
+                    }
+                    out.write(line.append('\n').toString());
+                }
+            }
+        } catch (FileMalformattedException | IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (pool != null)
+                pool.shutdown();
+        }
+    }
+}
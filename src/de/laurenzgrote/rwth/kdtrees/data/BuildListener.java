@@ -0,0 +1,19 @@
+package de.laurenzgrote.rwth.kdtrees.data;
+
+/**
+ * BuildListener. Receives a report of every node of a tree construction.
+ * Set by TreeParameters.setListener, without a listener nothing is measured.
+ * Parallel constructions call the listener from several threads at once.
+ */
+public interface BuildListener {
+
+    /**
+     * Called once per node, after its split (before its children are built)
+     * @param depth          Depth of the node (root: 0)
+     * @param size           Number of points of the node
+     * @param split          Split performed
+     * @param nanos          Time spent per phase, indexed by BuildPhase.ordinal()
+     * @param allocatedBytes Bytes allocated while splitting, -1 if the JVM does not tell
+     */
+    void nodeBuilt(int depth, int size, SplitType split, long[] nanos, long allocatedBytes);
+}
@@ -0,0 +1,13 @@
+package de.laurenzgrote.rwth.kdtrees.data;
+
+/**
+ * Phases of the split of a single node, as reported to a BuildListener
+ */
+public enum BuildPhase {
+    // Largest gap search over all features
+    MAXDIFF_SEARCH,
+    // Median of the variance split
+    MEDIAN_SELECTION,
+    // Partitioning the points (statistics of the children included)
+    PARTITION
+}
@@ -0,0 +1,227 @@
+package de.laurenzgrote.rwth.kdtrees.data;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Column. All values of one feature, indexed by row.
+ * Values either live in an array on the heap or in buffers outside of it
+ * (e.g. a memory mapped file), which are addressed in segments of SEGMENT_SIZE values
+ * since a single buffer cannot exceed 2 GB.
+ */
+public abstract class Column {
+
+    // Values per buffer segment (1 GB of doubles)
+    public static final int SEGMENT_SHIFT = 27;
+    public static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+
+    // Fixed point code of 1.0, codes are multiples of 1/FIXED16_MAX
+    static final int FIXED16_MAX = 0xFFFF;
+    private static final double FIXED16_STEP = 1.0 / FIXED16_MAX;
+
+    /**
+     * @return number of rows
+     */
+    public abstract int getLength();
+
+    /**
+     * @return value of the given row
+     */
+    public abstract double get(int row);
+
+    /**
+     * @param values Values on the heap (no copy is made!)
+     * @return Column of the values
+     */
+    public static Column of(double[] values) {
+        return new ArrayColumn(values);
+    }
+
+    /**
+     * @param values Values on the heap (no copy is made!)
+     * @return Column of the values
+     */
+    public static Column of(float[] values) {
+        return new FloatArrayColumn(values);
+    }
+
+    /**
+     * @param codes Fixed point codes of normalized values (see encodeFixed16), no copy is made!
+     * @return Column of the decoded values
+     */
+    public static Column ofFixed16(char[] codes) {
+        return new Fixed16Column(codes);
+    }
+
+    /**
+     * @param value normalized value
+     * @return Nearest 16 bit fixed point code
+     */
+    static char encodeFixed16(double value) {
+        return (char) Math.round(value * FIXED16_MAX);
+    }
+
+    /**
+     * @param code 16 bit fixed point code
+     * @return Value of the code, 1.0 for the largest one
+     */
+    static double decodeFixed16(char code) {
+        // Multiplying is exact enough: the largest code yields exactly 1.0, every code encodes back to itself
+        return code * FIXED16_STEP;
+    }
+
+    /**
+     * @param segments Buffers of SEGMENT_SIZE values each, the last one may be shorter
+     * @param length   Total number of values
+     * @return Column of the values (no copy is made!)
+     */
+    public static Column of(DoubleBuffer[] segments, int length) {
+        return new DoubleBufferColumn(segments, length);
+    }
+
+    /**
+     * @param segments Buffers of SEGMENT_SIZE values each, the last one may be shorter
+     * @param length   Total number of values
+     * @return Column of the values (no copy is made!)
+     */
+    public static Column of(FloatBuffer[] segments, int length) {
+        return new FloatBufferColumn(segments, length);
+    }
+
+    /**
+     * @param base Values so far (no copy is made!)
+     * @return Column of the values, to which further values can be appended
+     */
+    static AppendableColumn appendable(Column base) {
+        return new AppendableColumn(base);
+    }
+
+    /**
+     * Column of a fixed base followed by appended values on the heap
+     */
+    static class AppendableColumn extends Column {
+        private final Column base;
+        private final int baseLength;
+        private double[] appended = new double[16];
+        private int length;
+
+        AppendableColumn(Column base) {
+            this.base = base;
+            this.baseLength = base.getLength();
+            this.length = baseLength;
+        }
+
+        void add(double value) {
+            int i = length - baseLength;
+            if (i == appended.length)
+                appended = Arrays.copyOf(appended, 2 * i);
+            appended[i] = value;
+            length++;
+        }
+
+        @Override
+        public int getLength() {
+            return length;
+        }
+
+        @Override
+        public double get(int row) {
+            return row < baseLength ? base.get(row) : appended[row - baseLength];
+        }
+    }
+
+    private static class ArrayColumn extends Column {
+        private final double[] values;
+
+        ArrayColumn(double[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public int getLength() {
+            return values.length;
+        }
+
+        @Override
+        public double get(int row) {
+            return values[row];
+        }
+    }
+
+    private static class FloatArrayColumn extends Column {
+        private final float[] values;
+
+        FloatArrayColumn(float[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public int getLength() {
+            return values.length;
+        }
+
+        @Override
+        public double get(int row) {
+            return values[row];
+        }
+    }
+
+    private static class Fixed16Column extends Column {
+        private final char[] codes;
+
+        Fixed16Column(char[] codes) {
+            this.codes = codes;
+        }
+
+        @Override
+        public int getLength() {
+            return codes.length;
+        }
+
+        @Override
+        public double get(int row) {
+            return decodeFixed16(codes[row]);
+        }
+    }
+
+    private static class DoubleBufferColumn extends Column {
+        private final DoubleBuffer[] segments;
+        private final int length;
+
+        DoubleBufferColumn(DoubleBuffer[] segments, int length) {
+            this.segments = segments;
+            this.length = length;
+        }
+
+        @Override
+        public int getLength() {
+            return length;
+        }
+
+        @Override
+        public double get(int row) {
+            return segments[row >>> SEGMENT_SHIFT].get(row & (SEGMENT_SIZE - 1));
+        }
+    }
+
+    private static class FloatBufferColumn extends Column {
+        private final FloatBuffer[] segments;
+        private final int length;
+
+        FloatBufferColumn(FloatBuffer[] segments, int length) {
+            this.segments = segments;
+            this.length = length;
+        }
+
+        @Override
+        public int getLength() {
+            return length;
+        }
+
+        @Override
+        public double get(int row) {
+            return segments[row >>> SEGMENT_SHIFT].get(row & (SEGMENT_SIZE - 1));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package de.laurenzgrote.rwth.kdtrees.data;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * CompiledTree. Splits of a built tree, flattened into primitive arrays for fast classification.
+ * Nodes are numbered breadth first, so the upper levels used by every lookup lay next to each other.
+ * The children of an inner node are next to each other as well.
+ * Instances are immutable and may be shared among threads.
+ */
+public final class CompiledTree {
+
+    private final int dim;
+    private final int leafCount;
+    // feature[node]: decisive feature of an inner node, -1 for leafs
+    private final int[] feature;
+    // threshold[node]: values leq this go left
+    private final double[] threshold;
+    // child[node]: left child of an inner node (right one is child+1), cluster of a leaf
+    private final int[] child;
+
+    /**
+     * Flattens a tree. The tree itself is not needed afterwards.
+     * @param root Root of a built tree
+     */
+    public CompiledTree(TreeNode root) {
+        this.dim = root.getDim();
+        this.leafCount = root.getLeafCount();
+        int nodes = 2 * leafCount - 1; // full binary tree
+        this.feature = new int[nodes];
+        this.threshold = new double[nodes];
+        this.child = new int[nodes];
+
+        // BFS, along with the first cluster of every node (clusters are numbered by DFS)
+        Queue<TreeNode> queue = new ArrayDeque<>();
+        Queue<Integer> firstClusters = new ArrayDeque<>();
+        queue.add(root);
+        firstClusters.add(0);
+        int next = 1; // next free node number
+        for (int node = 0; node < nodes; node++) {
+            TreeNode tNode = queue.remove();
+            int firstCluster = firstClusters.remove();
+            if (tNode.getLeft() == null) {
+                feature[node] = -1;
+                child[node] = firstCluster;
+            } else {
+                feature[node] = tNode.getSplitFeature();
+                threshold[node] = tNode.getSplitValue();
+                child[node] = next;
+                next += 2;
+                queue.add(tNode.getLeft());
+                firstClusters.add(firstCluster);
+                queue.add(tNode.getRight());
+                firstClusters.add(firstCluster + tNode.getLeft().getLeafCount());
+            }
+        }
+    }
+
+    /**
+     * @return Dimension of the points
+     */
+    public int getDim() {
+        return dim;
+    }
+
+    /**
+     * @return Number of clusters
+     */
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    /**
+     * @return Number of nodes (inner nodes and leafs)
+     */
+    public int getNodeCount() {
+        return feature.length;
+    }
+
+    /**
+     * Routes a point to its leaf, equal to TreeNode.classify of the root
+     * @param point Values of all features
+     * @return Number of the leaf's cluster
+     */
+    public int classify(double[] point) {
+        int node = 0;
+        int f;
+        while ((f = feature[node]) >= 0)
+            node = point[f] <= threshold[node] ? child[node] : child[node] + 1;
+        return child[node];
+    }
+
+    /**
+     * Classifies several points without allocating memory
+     * @param points points[i] are the values of the ith point
+     * @param out    out[i] is set to the cluster of the ith point
+     */
+    public void classifyBatch(double[][] points, int[] out) {
+        if (out.length < points.length)
+            throw new IllegalArgumentException("Output must have room for all points");
+        for (int i = 0; i < points.length; i++)
+            out[i] = classify(points[i]);
+    }
+
+    /**
+     * Classifies all rows of a matrix without allocating memory
+     * @param matrix Points to classify, of the dimension of the tree
+     * @param out    out[row] is set to the cluster of the row
+     */
+    public void classifyBatch(DataMatrix matrix, int[] out) {
+        if (out.length < matrix.getLength())
+            throw new IllegalArgumentException("Output must have room for all points");
+        for (int row = 0; row < matrix.getLength(); row++) {
+            int node = 0;
+            int f;
+            while ((f = feature[node]) >= 0)
+                node = matrix.get(row, f) <= threshold[node] ? child[node] : child[node] + 1;
+            out[row] = child[node];
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package de.laurenzgrote.rwth.kdtrees.data;
+
+import java.util.Collection;
+
+/**
+ * DataMatrix. Column-wise storage of all data points of an input.
+ * There is one column per feature, the nth entry of each column belongs to the nth row.
+ * The matrix is shared by all the nodes of a tree, these only keep index ranges into it.
+ * We assume that data is normalized, this is asserted upon construction.
+ */
+public class DataMatrix {
+
+    private final int dim;
+    private int length;
+
+    private final Column[] columns;
+    // whether rows can be appended to the columns
+    private boolean appendable;
+    // Precision of the values, appended ones are rounded alike
+    private Encoding encoding = Encoding.DOUBLE;
+
+    /**
+     * Copies a collection of Data Points into columns
+     * @param set Points constituing the matrix, rows are numbered in iteration order
+     * @throws DataPointMalformattedException if DataPoints are not of the same dimension
+     */
+    public DataMatrix(Collection<DataPoint> set) throws DataPointMalformattedException {
+        this.length = set.size();
+        this.dim = set.iterator().next().getDim();
+        double[][] values = new double[dim][length];
+        int row = 0;
+        for (DataPoint dPoint : set) {
+            // All DPs must have same dim
+            if (dPoint.getDim() != dim)
+                throw new DataPointMalformattedException("Data Point has wrong dimension", dPoint);
+            for (int feature = 0; feature < dim; feature++)
+                values[feature][row] = dPoint.getData(feature);
+            row++;
+        }
+        this.columns = new Column[dim];
+        for (int feature = 0; feature < dim; feature++)
+            columns[feature] = Column.of(values[feature]);
+    }
+
+    /**
+     * Wraps already existing columns (no copy is made!)
+     * @param columns columns[feature][row], all of the same length
+     * @throws IllegalArgumentException if columns differ in length or data is not normalized
+     */
+    public DataMatrix(double[][] columns) {
+        this(wrap(columns));
+    }
+
+    /**
+     * Wraps already existing columns (no copy is made!)
+     * @param columns one column per feature, all of the same length
+     * @throws IllegalArgumentException if columns differ in length or data is not normalized
+     */
+    public DataMatrix(Column[] columns) {
+        this(columns, true);
+    }
+
+    /**
+     * Wraps columns known to be normalized (e.g. written by this program) without checking every value,
+     * so mapped columns are not read upon construction
+     * @param columns one column per feature, all of the same length
+     * @return Matrix of the columns (no copy is made!)
+     * @throws IllegalArgumentException if columns differ in length
+     */
+    public static DataMatrix ofTrusted(Column[] columns) {
+        return new DataMatrix(columns, false);
+    }
+
+    private DataMatrix(Column[] columns, boolean checkNormalized) {
+        this.dim = columns.length;
+        this.length = columns[0].getLength();
+        this.columns = columns;
+        for (Column column : columns) {
+            if (column.getLength() != length)
+                throw new IllegalArgumentException("Columns must be of equal length");
+            if (!checkNormalized)
+                continue;
+            for (int row = 0; row < length; row++) {
+                double d = column.get(row);
+                if (d < 0.0 || d > 1.0)
+                    throw new IllegalArgumentException("Data not normalized");
+            }
+        }
+    }
+
+    /**
+     * Copies the matrix onto the heap in a compact encoding.
+     * The values are rounded to the encoding (see Encoding for the effect on trees).
+     * @param encoding Encoding of the copy
+     * @return Matrix of the encoded values
+     */
+    public DataMatrix encode(Encoding encoding) {
+        Column[] encoded = new Column[dim];
+        for (int feature = 0; feature < dim; feature++)
+            encoded[feature] = encoding.encode(columns[feature]);
+        // Rounding keeps values in [0, 1]
+        DataMatrix matrix = new DataMatrix(encoded, false);
+        matrix.encoding = encoding;
+        return matrix;
+    }
+
+    private static Column[] wrap(double[][] values) {
+        Column[] columns = new Column[values.length];
+        for (int feature = 0; feature < values.length; feature++)
+            columns[feature] = Column.of(values[feature]);
+        return columns;
+    }
+
+    /**
+     * Appends a row, used for inserting points into a built tree.
+     * Not thread safe: Nobody may read the matrix while a row is appended.
+     * @param values Value of every feature
+     * @return number of the new row
+     * @throws IllegalArgumentException if row has wrong dimension or is not normalized
+     */
+    public int append(double[] values) {
+        if (values.length != dim)
+            throw new IllegalArgumentException("Row has wrong dimension");
+        for (double d : values)
+            if (d < 0.0 || d > 1.0)
+                throw new IllegalArgumentException("Data not normalized");
+        if (!appendable) {
+            // Existing values stay where they are, only new ones go to the heap
+            for (int feature = 0; feature < dim; feature++)
+                columns[feature] = Column.appendable(columns[feature]);
+            appendable = true;
+        }
+        for (int feature = 0; feature < dim; feature++)
+            ((Column.AppendableColumn) columns[feature]).add(encoding.round(values[feature]));
+        return length++;
+    }
+
+    /**
+     * @return Dimension of the every data point
+     */
+    public int getDim() {
+        return dim;
+    }
+
+    /**
+     * @return number of rows in the matrix
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return Encoding the values were rounded to, DOUBLE unless the matrix was encoded
+     */
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * @return value of the feature in the given row
+     */
+    public double get(int row, int feature) {
+        return columns[feature].get(row);
+    }
+
+    /**
+     * @return all values of the feature, indexed by row
+     */
+    public Column getColumn(int feature) {
+        return columns[feature];
+    }
+}
@@ -2,11 +2,15 @@ package de.laurenzgrote.rwth.kdtrees.data;
 
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.IntPredicate;
 
 /**
  * DataSet. Set of Data Points. Class supports different statistical queries.
+ * The points are not stored in the set itself: A set is a range [from, to)
+ * of a row permutation into a column-wise DataMatrix.
+ * Subsets share the matrix and the permutation of their parent,
+ * thus a whole tree only needs the memory of the input once.
  */
 public class DataSet {
     // This is a "magic number"
@@ -15,10 +19,26 @@ public class DataSet {
     private static double mincluster = 0.05;
     protected int minclustersize;
 
-    private int dim;
-    private int length;
-
-    private HashSet<DataPoint> set;
+    private final DataMatrix matrix;
+    // Permutation of the rows, shared among parent and subsets
+    private int[] index;
+    // Buffers for partitioning and selection, shared as well (subsets are disjoint)
+    private int[] buffer;
+    private double[] values;
+    // Range of the permutation belonging to this set
+    private int from, to;
+    // Rows inserted after construction, they follow the range
+    private int[] inserted = new int[0];
+    private int insertedCnt;
+    // Summary statistics of the set, computed upon construction
+    private final NodeStatistics stats;
+    // Number of supersets (0 for the whole input)
+    private final int depth;
+    // Split into subsets, if any: rows with a feature value leq splitValue went left
+    private int splitFeature = -1;
+    private double splitValue;
+    // Number of leafs below (and including) the set
+    private int leafCount = 1;
 
     /**
      * Initialises a set of Data Points (e.g. from input). Set can not be altered.
@@ -26,47 +46,104 @@ public class DataSet {
      * @throws DataPointMalformatException if DataPoints are not sane
      */
     public DataSet(Collection<DataPoint> set) throws DataPointMalformattedException {
-        this.length = set.size();
-        this.dim = set.iterator().next().getDim();
-        // All DPs must have same dim
-        for (DataPoint dPoint : set)
-            if (dPoint.getDim() != dim)
-                throw new DataPointMalformattedException("Data Point has wrong dimension", dPoint);
-        // set is sane
-        this.set = new HashSet<>(set);
+        this(new DataMatrix(set));
+    }
+
+    /**
+     * Initialises a set containing all rows of a matrix
+     * @param matrix Columns constituing the data set
+     */
+    public DataSet(DataMatrix matrix) {
+        this.matrix = matrix;
+        this.from = 0;
+        this.to = matrix.getLength();
+        this.index = new int[to];
+        for (int row = 0; row < to; row++)
+            index[row] = row;
+        this.buffer = new int[to];
+        this.values = new double[to];
+        this.depth = 0;
+        // One pass over all points and features
+        this.stats = new NodeStatistics(getDim());
+        for (int row = 0; row < to; row++)
+            stats.add(matrix, row);
         // Treshholds for splits
-        this.minclustersize = (int) (mincluster * getLength());
+        this.minclustersize = getMinClusterSize(getLength());
     }
 
     /**
      * Creates a subset from the given set.
-     * Set: ds / remove
-     * The DataSet is assumed is assumed to be complete and sorted, thus a proteced method.
-     * Only needed for the SortedDataSet implementation
-     * @param ds     Original Dataset
-     * @param remove Datapoints to be removed
-     */
-    protected DataSet (DataSet ds, Collection<DataPoint> remove) {
-        this.set = new HashSet<>(ds.set);
-        this.set.removeAll(remove);
-        this.length = set.size();
-        this.dim = ds.getDim();
+     * The range must have been created by partitioning the parent.
+     * @param ds    Original Dataset
+     * @param from  First position (inclusive) of the range in the permutation
+     * @param to    Last position (exclusive) of the range in the permutation
+     * @param stats Statistics of the range, collected while partitioning
+     */
+    protected DataSet(DataSet ds, int from, int to, NodeStatistics stats) {
+        this.matrix = ds.matrix;
+        this.index = ds.index;
+        this.buffer = ds.buffer;
+        this.values = ds.values;
+        this.from = from;
+        this.to = to;
+        this.stats = stats;
+        this.depth = ds.depth + 1;
         // Treshholds for splits
-        this.minclustersize = (int) (mincluster * getLength());
+        this.minclustersize = getMinClusterSize(getLength());
+    }
+
+    /**
+     * @param length Number of points of a set
+     * @return Number of points a subset of the set must at least have
+     */
+    public static int getMinClusterSize(int length) {
+        return (int) (mincluster * length);
     }
 
     /**
      * @return Dimension of the every data point
      */
     public int getDim() {
-        return dim;
+        return matrix.getDim();
     }
 
     /**
      * @return number of vectors in the data set
      */
     public int getLength() {
-        return length;
+        return to - from + insertedCnt;
+    }
+
+    /**
+     * @param point   Number of the point within the set (0 to length-1)
+     * @param feature Feature currently looked at
+     * @return Value of the feature of the point
+     */
+    public double getData(int point, int feature) {
+        return matrix.get(getRow(point), feature);
+    }
+
+    /**
+     * @param point Number of the point within the set (0 to length-1)
+     * @return Row of the point in the input
+     */
+    public int getRow(int point) {
+        int rangeLength = to - from;
+        return point < rangeLength ? index[from + point] : inserted[point - rangeLength];
+    }
+
+    /**
+     * @return Matrix the set is a part of
+     */
+    public DataMatrix getMatrix() {
+        return matrix;
+    }
+
+    /**
+     * @return Summary statistics of the set
+     */
+    public NodeStatistics getStatistics() {
+        return stats;
     }
 
     /**
@@ -74,12 +151,7 @@ public class DataSet {
      * @return Average value in the set of the feature
      */
     public double getAvg (int feature) {
-        double avg = 0.0;
-        for (DataPoint d : set) {
-            avg += d.getData(feature);
-        }
-        avg /= (double) length;
-        return avg;
+        return stats.getAvg(feature);
     }
 
     /**
@@ -87,11 +159,58 @@ public class DataSet {
      * @return Median value in the set of the feature
      */
     public double getMean (int feature) {
-        // Set to array (sets cannot be sorted)
-        DataPoint[] array = set.toArray(new DataPoint[0]);
-        Arrays.sort(array, new DataPointComparator(feature));
-        int mid = length / 2;
-        return array[mid].getData(feature);
+        // Copy values, the buffers may be in use by a construction
+        double[] copy = new double[getLength()];
+        copyValues(feature, copy, 0);
+        return Selection.select(copy, 0, copy.length, getLength() / 2);
+    }
+
+    /**
+     * Median value in the set of the feature, without allocating memory.
+     * Only allowed while no subset of this set exists!
+     * @param feature   Feature currently looked at
+     * @param selection Algorithm used for finding the median
+     * @return Median value in the set of the feature
+     */
+    protected double selectMean (int feature, MedianSelection selection) {
+        copyValues(feature);
+        int mid = from + getLength() / 2;
+        if (selection == MedianSelection.SORT) {
+            Arrays.sort(values, from, to);
+            return values[mid];
+        }
+        return Selection.select(values, from, to, mid);
+    }
+
+    /**
+     * Copies the values of a feature to the selection buffer, which may be reordered then.
+     * Only allowed while no subset of this set exists!
+     * @param feature Feature currently looked at
+     * @return Buffer, the values are at the positions getFrom() to getTo()
+     */
+    protected double[] copyValues (int feature) {
+        copyValues(feature, values, from);
+        return values;
+    }
+
+    /**
+     * @return Selection buffer, shared with the subsets: The set may use the positions getFrom() to getTo()
+     */
+    double[] getSelectionBuffer () {
+        return values;
+    }
+
+    /**
+     * Copies the values of a feature to an array (in the order of the permutation)
+     */
+    private void copyValues (int feature, double[] dest, int destPos) {
+        Column column = matrix.getColumn(feature);
+        for (int i = from; i < to; i++) {
+            dest[destPos++] = column.get(index[i]);
+        }
+        for (int i = 0; i < insertedCnt; i++) {
+            dest[destPos++] = column.get(inserted[i]);
+        }
     }
 
     /**
@@ -99,14 +218,7 @@ public class DataSet {
      * @return Minimum value in the set of the feature
      */
     public double getMinimum (int feature) {
-        double minimum = 1; // normalized, highest possible
-        for (DataPoint dPoint : set) {
-            double val = dPoint.getData(feature);
-            if (val < minimum) {
-                minimum = val;
-            }
-        }
-        return minimum;
+        return stats.getMinimum(feature);
     }
 
     /**
@@ -114,14 +226,7 @@ public class DataSet {
      * @return Maximum value in the set of the feature
      */
     public double getMaximum (int feature) {
-        double maximum = 0; // normalized, lowest possible
-        for (DataPoint dPoint : set) {
-            double val = dPoint.getData(feature);
-            if (val > maximum) {
-                maximum = val;
-            }
-        }
-        return maximum;
+        return stats.getMaximum(feature);
     }
     
     /**
@@ -131,14 +236,7 @@ public class DataSet {
      * (but no root since we look for variance not stddev)
      */
     public double getVariance (int feature) {
-        double avg = getAvg(feature);
-        double variance = 0.0;
-        for (DataPoint d : set) {
-            double val = d.getData(feature);
-            variance += Math.pow(val - avg,2);
-        }
-        variance /= (double) (length - 1);
-        return variance;
+        return stats.getVariance(feature);
     }
 
     /**
@@ -151,11 +249,170 @@ public class DataSet {
     }
 
     /**
-     * @return DataPoints contained in the set
+     * Partitions the range of the set: Points leq value first, then points ge value
+     * @param feature    decisive feature
+     * @param value      pivot value
+     * @param leftStats  Empty statistics, filled with the leq points
+     * @param rightStats Empty statistics, filled with the ge points
+     * @return Position in the permutation where the ge points start
+     */
+    protected int partition(int feature, double value, NodeStatistics leftStats, NodeStatistics rightStats) {
+        Column column = matrix.getColumn(feature);
+        return partition(row -> column.get(row) <= value, leftStats, rightStats);
+    }
+
+    /**
+     * Partitions the range of the set: Rows satisfying isLeft first, then the others.
+     * The partition is stable, so the relative order within both parts is kept.
+     * Statistics of both parts are collected on the way, so the subsets need no pass of their own.
+     * Only allowed while no subset of this set exists!
+     * @param isLeft     Predicate on the row numbers
+     * @param leftStats  Empty statistics, filled with the first part
+     * @param rightStats Empty statistics, filled with the second part
+     * @return Position in the permutation where the second part starts
+     */
+    protected int partition(IntPredicate isLeft, NodeStatistics leftStats, NodeStatistics rightStats) {
+        int mid = from; // next left position
+        int rightCnt = 0; // right rows in buffer
+        for (int i = from; i < to; i++) {
+            int row = index[i];
+            if (isLeft.test(row)) {
+                index[mid++] = row; // mid <= i, so nothing unread is overwritten
+                leftStats.add(matrix, row);
+            } else {
+                buffer[from + rightCnt++] = row;
+                rightStats.add(matrix, row);
+            }
+        }
+        System.arraycopy(buffer, from, index, mid, rightCnt);
+        return mid;
+    }
+
+    /**
+     * Puts the rows of the set back into an order taken before (e.g. to partition it once more).
+     * Only allowed while no subset of this set is used!
+     * @param rows All rows of the set, as getRow returned them
+     */
+    protected void restoreRows(int[] rows) {
+        System.arraycopy(rows, 0, index, from, to - from);
+    }
+
+    /**
+     * Draws a stratified sample: The points are cut into size strata of consecutive positions,
+     * one point is drawn from each. The same set always yields the same sample.
+     * @param size Number of points drawn, at most the length of the set
+     * @return Rows of the sampled points
+     */
+    protected int[] sampleRows(int size) {
+        int length = getLength();
+        SplittableRandom random = new SplittableRandom(31L * from + length);
+        int[] rows = new int[size];
+        for (int stratum = 0; stratum < size; stratum++) {
+            int first = (int) ((long) stratum * length / size);
+            int next = (int) ((long) (stratum + 1) * length / size);
+            rows[stratum] = getRow(first + random.nextInt(next - first));
+        }
+        return rows;
+    }
+
+    /**
+     * Adds a row of the matrix to the set, after the set has been constructed.
+     * Statistics are updated, but subsets (if any) are not touched.
+     * @param row Row to be added
+     */
+    protected void insert(int row) {
+        if (insertedCnt == inserted.length)
+            inserted = Arrays.copyOf(inserted, Math.max(16, 2 * insertedCnt));
+        inserted[insertedCnt++] = row;
+        stats.add(matrix, row);
+    }
+
+    /**
+     * @return Number of rows inserted after construction
+     */
+    protected int getInsertedCount() {
+        return insertedCnt;
+    }
+
+    /**
+     * Moves all rows of the set (including inserted ones) to a permutation of its own,
+     * so the set can be split again. The rows of the parents are not touched.
+     * Minimum cluster size is recomputed from the new length, as if the set was constructed with all its rows.
+     * Only allowed while no subset of this set exists!
+     */
+    protected void rebase() {
+        int length = getLength();
+        int[] rows = new int[length];
+        for (int point = 0; point < length; point++)
+            rows[point] = getRow(point);
+        this.index = rows;
+        this.buffer = new int[length];
+        this.values = new double[length];
+        this.from = 0;
+        this.to = length;
+        this.inserted = new int[0];
+        this.insertedCnt = 0;
+        this.minclustersize = getMinClusterSize(length);
+    }
+
+    /**
+     * Records the split, after both subsets have been built
+     * @param feature   decisive feature
+     * @param value     points with a value leq this went to the first subset
+     * @param leafCount Number of leafs of both subsets together
+     */
+    protected void setSplit(int feature, double value, int leafCount) {
+        this.splitFeature = feature;
+        this.splitValue = value;
+        this.leafCount = leafCount;
+    }
+
+    /**
+     * Updates the number of leafs, after a subset has been split again
+     */
+    protected void setLeafCount(int leafCount) {
+        this.leafCount = leafCount;
+    }
+
+    /**
+     * @return decisive feature of the split, -1 if the set was not split
+     */
+    public int getSplitFeature() {
+        return splitFeature;
+    }
+
+    /**
+     * @return Points with a value leq this are in the left subset
+     */
+    public double getSplitValue() {
+        return splitValue;
+    }
+
+    /**
+     * @return Number of leafs below the set, 1 if the set was not split
+     */
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    /**
+     * @return Number of supersets of the set (0 for the whole input)
+     */
+    protected int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return First position (inclusive) of the set in the permutation
+     */
+    protected int getFrom() {
+        return from;
+    }
+
+    /**
+     * @return Last position (exclusive) of the set in the permutation
      */
-    public Set<DataPoint> getSet() {
-        // All the lists contain the same data
-        // so we can select one randomly
-        return set;
+    protected int getTo() {
+        return to;
     }
 }
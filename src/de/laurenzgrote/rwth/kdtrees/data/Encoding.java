@@ -0,0 +1,105 @@
+package de.laurenzgrote.rwth.kdtrees.data;
+
+/**
+ * Encoding. How the values of a column are stored on the heap.
+ * Since data is normalized, every value lies in [0, 1], which compact encodings make use of.
+ * Values are decoded to double upon every read, statistics and splits see the decoded values only,
+ * so a tree of an encoded matrix is the tree of the decoded values.
+ *
+ * Precision and tresh_maxdiff: Encoding moves every value by up to half a step (getResolution() / 2),
+ * so a gap between two values may shrink or grow by up to one step, and values closer than that may
+ * become equal. Gaps are only compared to tresh_maxdiff, thus trees are those of the exact values
+ * unless some gap lies within one step of tresh_maxdiff. tresh_maxdiff should be well above the step.
+ */
+public enum Encoding {
+
+    /**
+     * 8 bytes per value, exact
+     */
+    DOUBLE(Double.BYTES, 0.0) {
+        @Override
+        public double round(double value) {
+            return value;
+        }
+
+        @Override
+        Column encode(Column column) {
+            double[] values = new double[column.getLength()];
+            for (int row = 0; row < values.length; row++)
+                values[row] = column.get(row);
+            return Column.of(values);
+        }
+    },
+    /**
+     * 4 bytes per value, 24 significant bits: Values of [0.5, 1] are off by at most 2^-25 (3e-8),
+     * smaller ones by less. Negligible for any sensible tresh_maxdiff.
+     */
+    FLOAT(Float.BYTES, 0x1.0p-24) {
+        @Override
+        public double round(double value) {
+            return (float) value;
+        }
+
+        @Override
+        Column encode(Column column) {
+            float[] values = new float[column.getLength()];
+            for (int row = 0; row < values.length; row++)
+                values[row] = (float) column.get(row);
+            return Column.of(values);
+        }
+    },
+    /**
+     * 2 bytes per value, unsigned fixed point: [0, 1] in 65535 equal steps of 1.5e-5.
+     * Every value is off by at most 7.6e-6, no matter how small it is.
+     * Fine for tresh_maxdiff of 1e-3 and above, tresholds near the step make splits arbitrary.
+     */
+    FIXED16(Character.BYTES, 1.0 / Column.FIXED16_MAX) {
+        @Override
+        public double round(double value) {
+            return Column.decodeFixed16(Column.encodeFixed16(value));
+        }
+
+        @Override
+        Column encode(Column column) {
+            char[] values = new char[column.getLength()];
+            for (int row = 0; row < values.length; row++)
+                values[row] = Column.encodeFixed16(column.get(row));
+            return Column.ofFixed16(values);
+        }
+    };
+
+    private final int bytes;
+    private final double resolution;
+
+    Encoding(int bytes, double resolution) {
+        this.bytes = bytes;
+        this.resolution = resolution;
+    }
+
+    /**
+     * @return Bytes per value
+     */
+    public int getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return Largest distance of two adjacent encoded values (0 if exact),
+     *         gaps may be off by up to this much
+     */
+    public double getResolution() {
+        return resolution;
+    }
+
+    /**
+     * @param value normalized value
+     * @return Value as read after encoding it
+     */
+    public abstract double round(double value);
+
+    /**
+     * @param column normalized values
+     * @return Copy of the column on the heap in this encoding
+     */
+    abstract Column encode(Column column);
+}
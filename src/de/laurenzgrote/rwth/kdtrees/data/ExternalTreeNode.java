@@ -0,0 +1,116 @@
+package de.laurenzgrote.rwth.kdtrees.data;
+
+/**
+ * ExternalTreeNode. Inner node of a tree built out of core, whose split was found by passes over a file.
+ * The node does not hold points itself: Its points are those of the left child followed by those of the right one,
+ * in the same order as in a node built in memory.
+ */
+public class ExternalTreeNode implements TreeNode {
+
+    private final NodeStatistics stats;
+    private final TreeNode left, right;
+    private final int splitFeature;
+    private final double splitValue;
+
+    /**
+     * @param stats   Statistics of the node
+     * @param left    Child with the points leq value
+     * @param right   Child with the points ge value
+     * @param feature decisive feature
+     * @param value   Points with a value leq this are in the left child
+     */
+    public ExternalTreeNode(NodeStatistics stats, TreeNode left, TreeNode right, int feature, double value) {
+        if (left.getLength() + right.getLength() != stats.getLength())
+            throw new IllegalArgumentException("Children must partition the node");
+        this.stats = stats;
+        this.left = left;
+        this.right = right;
+        this.splitFeature = feature;
+        this.splitValue = value;
+    }
+
+    @Override
+    public double getData(int point, int feature) {
+        int leftLength = left.getLength();
+        return point < leftLength ? left.getData(point, feature) : right.getData(point - leftLength, feature);
+    }
+
+    @Override
+    public int getRow(int point) {
+        int leftLength = left.getLength();
+        return point < leftLength ? left.getRow(point) : right.getRow(point - leftLength);
+    }
+
+    @Override
+    public TreeNode getLeft() {
+        return left;
+    }
+
+    @Override
+    public TreeNode getRight() {
+        return right;
+    }
+
+    @Override
+    public int getDim() {
+        return left.getDim();
+    }
+
+    @Override
+    public int getLength() {
+        return stats.getLength();
+    }
+
+    @Override
+    public double getAvg(int feature) {
+        return stats.getAvg(feature);
+    }
+
+    @Override
+    public double getMean(int feature) {
+        double[] copy = new double[getLength()];
+        for (int point = 0; point < copy.length; point++)
+            copy[point] = getData(point, feature);
+        return Selection.select(copy, 0, copy.length, copy.length / 2);
+    }
+
+    @Override
+    public double getMinimum(int feature) {
+        return stats.getMinimum(feature);
+    }
+
+    @Override
+    public double getMaximum(int feature) {
+        return stats.getMaximum(feature);
+    }
+
+    @Override
+    public double getVariance(int feature) {
+        return stats.getVariance(feature);
+    }
+
+    @Override
+    public double getStddev(int feature) {
+        return Math.sqrt(getVariance(feature));
+    }
+
+    @Override
+    public NodeStatistics getStatistics() {
+        return stats;
+    }
+
+    @Override
+    public int getSplitFeature() {
+        return splitFeature;
+    }
+
+    @Override
+    public double getSplitValue() {
+        return splitValue;
+    }
+
+    @Override
+    public int getLeafCount() {
+        return left.getLeafCount() + right.getLeafCount();
+    }
+}
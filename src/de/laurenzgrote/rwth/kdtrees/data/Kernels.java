@@ -0,0 +1,42 @@
+package de.laurenzgrote.rwth.kdtrees.data;
+
+import java.util.logging.Logger;
+
+/**
+ * Kernels. Implementations of the inner loops which compare every value of a node to a pivot
+ * (selection and partitioning). Both yield bit-identical results, they differ in speed only.
+ * The default is chosen at startup by the system property kdtrees.kernels (scalar or branch_free),
+ * an unknown value is logged and branch_free is used.
+ */
+public enum Kernels {
+    // One branch per value, which is cheap only while the branches are predictable
+    SCALAR,
+    // Comparisons feed conditional moves instead of branches, so random input costs no mispredictions
+    BRANCH_FREE;
+
+    private static final Logger LOG = Logger.getLogger(Kernels.class.getName());
+
+    private static final Kernels DEFAULT = fromProperty();
+
+    /**
+     * @return Kernels named by the system property kdtrees.kernels, BRANCH_FREE if unset or unknown
+     */
+    private static Kernels fromProperty() {
+        String name = System.getProperty("kdtrees.kernels");
+        if (name == null)
+            return BRANCH_FREE;
+        try {
+            return valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            LOG.warning("Unknown kernels " + name + " (scalar or branch_free), using branch_free");
+            return BRANCH_FREE;
+        }
+    }
+
+    /**
+     * @return Kernels used unless others are asked for
+     */
+    public static Kernels getDefault() {
+        return DEFAULT;
+    }
+}
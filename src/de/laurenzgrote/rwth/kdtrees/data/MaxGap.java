@@ -0,0 +1,118 @@
+package de.laurenzgrote.rwth.kdtrees.data;
+
+import java.util.Arrays;
+
+/**
+ * MaxGap. Exact search for the largest gap between two consecutive values, in linear time.
+ * The margin smallest and the margin largest values are outliers: A gap must have
+ * at least margin values on each side. Those bounds are found by selection,
+ * the gap itself by the pigeonhole principle: Between c values there are c buckets
+ * narrower than the average gap, so the largest gap lies between two buckets
+ * and only the minimum and the maximum of every bucket have to be known.
+ * Buckets are reused for every search, so one instance should serve a whole node.
+ * Only the pivot of a gap is public, so every split at a gap (e.g. out of core) is placed alike.
+ */
+public class MaxGap {
+
+    private double[] bucketMin, bucketMax;
+
+    // Result of the last search
+    private double gap, lower, upper;
+
+    /**
+     * @param capacity Maximum number of values searched
+     */
+    MaxGap(int capacity) {
+        this.bucketMin = new double[capacity];
+        this.bucketMax = new double[capacity];
+    }
+
+    /**
+     * Searches the largest gap of a[from, to), which is reordered in the process
+     * @param a      values
+     * @param from   first position (inclusive)
+     * @param to     last position (exclusive)
+     * @param margin minimum number of values on each side of the gap (at least 1)
+     */
+    void search(double[] a, int from, int to, int margin) {
+        gap = 0.0;
+        lower = upper = Double.NaN;
+        if (to - from < 2 * margin)
+            return;
+        // Smallest and largest value which may border a gap
+        int loPos = from + margin - 1;
+        int hiPos = to - margin;
+        double lo = Selection.select(a, from, to, loPos);
+        // [loPos, to) holds the values geq lo now
+        double hi = Selection.select(a, loPos, to, hiPos);
+        lower = upper = lo;
+        if (hi <= lo)
+            return;
+        // [loPos, hiPos] holds the values between lo and hi now
+        int buckets = hiPos - loPos + 1;
+        double width = (hi - lo) / buckets;
+        Arrays.fill(bucketMin, 0, buckets, Double.POSITIVE_INFINITY);
+        Arrays.fill(bucketMax, 0, buckets, Double.NEGATIVE_INFINITY);
+        for (int i = loPos; i <= hiPos; i++) {
+            double val = a[i];
+            int bucket = Math.min(buckets - 1, (int) ((val - lo) / width));
+            if (val < bucketMin[bucket])
+                bucketMin[bucket] = val;
+            if (val > bucketMax[bucket])
+                bucketMax[bucket] = val;
+        }
+        // lo is in the first bucket
+        double prevMax = bucketMax[0];
+        for (int bucket = 1; bucket < buckets; bucket++) {
+            if (bucketMin[bucket] == Double.POSITIVE_INFINITY)
+                continue; // empty
+            double diff = bucketMin[bucket] - prevMax;
+            if (diff > gap) { // first of equal gaps wins
+                gap = diff;
+                lower = prevMax;
+                upper = bucketMin[bucket];
+            }
+            prevMax = bucketMax[bucket];
+        }
+    }
+
+    /**
+     * @return Size of the gap found by the last search (0 if none)
+     */
+    double getGap() {
+        return gap;
+    }
+
+    /**
+     * @return Greatest value below the gap found by the last search
+     */
+    double getLower() {
+        return lower;
+    }
+
+    /**
+     * @return Smallest value above the gap found by the last search
+     */
+    double getUpper() {
+        return upper;
+    }
+
+    /**
+     * @return Value in the middle of the gap found by the last search.
+     * Values leq the pivot are below the gap, values ge the pivot above.
+     */
+    double getPivot() {
+        return pivot(lower, upper);
+    }
+
+    /**
+     * @param lower Greatest value below the gap
+     * @param upper Smallest value above the gap
+     * @return Value in the middle of a gap, values leq it are below the gap
+     */
+    public static double pivot(double lower, double upper) {
+        double pivot = lower + (upper - lower) / 2;
+        // Rounding must not move the pivot onto the upper value
+        return pivot < upper ? pivot : lower;
+    }
+}
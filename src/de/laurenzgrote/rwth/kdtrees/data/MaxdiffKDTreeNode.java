@@ -1,13 +1,24 @@
 package de.laurenzgrote.rwth.kdtrees.data;
 
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.function.IntPredicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
- * KDTreeNode. A node in a KD Tree, containing data points
+ * KDTreeNode. A node in a KD Tree, containing data points.
+ * Points can be inserted after construction: They are routed to their leaf like classify does,
+ * updating the statistics of every node on the way. A leaf is split again
+ * once it grew by the growth factor of the parameters, the rest of the tree is not rebuilt.
+ * Like any construction, the new split uses 5% of the (grown) leaf as minimum cluster size.
+ * Inner nodes keep their splits, their minimum cluster size is not used any more.
+ * Very large nodes may choose their split from a sample (see TreeParameters.setSampling),
+ * sampled decisions found to differ from exact ones are logged.
  */
 public class MaxdiffKDTreeNode extends DataSet implements TreeNode {
-    private double tresh_maxdiff, tresh_variance;
+    private static final Logger LOG = Logger.getLogger(MaxdiffKDTreeNode.class.getName());
+
+    private TreeParameters params;
     // Children containing the subsets
     private MaxdiffKDTreeNode left, right;
 
@@ -19,9 +30,48 @@ public class MaxdiffKDTreeNode extends DataSet implements TreeNode {
      */
     public MaxdiffKDTreeNode(Collection<DataPoint> set, double tresh_maxdiff, double tresh_variance)
             throws DataPointMalformattedException {
+        this(set, new TreeParameters(tresh_maxdiff, tresh_variance));
+    }
+
+    /**
+     * Constructs KDTreeNode from List of DataPoints (used in initialization)
+     * 
+     * @param params Tresholds and parallelism of the construction
+     */
+    public MaxdiffKDTreeNode(Collection<DataPoint> set, TreeParameters params)
+            throws DataPointMalformattedException {
         super(set);
-        this.tresh_maxdiff = tresh_maxdiff;
-        this.tresh_variance = tresh_variance;
+        this.params = params;
+        split(); // Split node, if possible
+    }
+
+    /**
+     * Constructs KDTreeNode from all rows of a matrix (used in initialization)
+     * 
+     * @param tresh_maxdiff  Minimum difference for a maxdiff split
+     * @param tresh_variance Minimum variance for a median variance split
+     */
+    public MaxdiffKDTreeNode(DataMatrix matrix, double tresh_maxdiff, double tresh_variance) {
+        this(matrix, new TreeParameters(tresh_maxdiff, tresh_variance));
+    }
+
+    /**
+     * Constructs KDTreeNode from all rows of a matrix (used in initialization)
+     * 
+     * @param params Tresholds and parallelism of the construction
+     */
+    public MaxdiffKDTreeNode(DataMatrix matrix, TreeParameters params) {
+        super(matrix);
+        this.params = params;
+        split(); // Split node, if possible
+    }
+
+    /**
+     * Constructs KDTreeNode from a partitioned range of the parent
+     */
+    private MaxdiffKDTreeNode(MaxdiffKDTreeNode parent, int from, int to, NodeStatistics stats) {
+        super(parent, from, to, stats);
+        this.params = parent.params;
         split(); // Split node, if possible
     }
 
@@ -29,11 +79,16 @@ public class MaxdiffKDTreeNode extends DataSet implements TreeNode {
      * Splits a node if possible
      */
     private void split() {
+        NodeProbe probe = NodeProbe.start(params, getDepth(), getLength());
         // First try to split by maxdiff,
         // if unsuccesful: Split by variance
         // Don't split if current cluster to small (Must be 2x Minsize)
-        if (getLength() > 2*minclustersize && !split_maxdiff())
-            split_variance();
+        if (getLength() > 2*minclustersize) {
+            if (!split_maxdiff(probe))
+                split_variance(probe);
+        } else {
+            probe.finish(SplitType.LEAF);
+        }
     }
 
     /**
@@ -41,147 +96,312 @@ public class MaxdiffKDTreeNode extends DataSet implements TreeNode {
      * 
      * @return whether maxdiff split was performed
      */
-    private boolean split_maxdiff() {
-        double maxDiff = -1.0; // Maximum (so Far)
-        int maxDiffFeature = -1; // in which feature
-        double pivot = 0.0; // placeholder
-        for (int feature = 0; feature < getDim(); feature++) { // for all features
-            // Split by histogram
-            double min = getMinimum(feature);
-            double max = getMaximum(feature);
-            double range = max - min;
-            // See paper
-            int bins = getLength() + 1;
-            double bin_width = range / ((double) bins);
-            // We only need to know how many items in bin
-            int[] binSizes = new int[bins]; // Java auto-initializes
-            // Fill the Bins
-            for (DataPoint dPoint : getSet()) {
-                double value = dPoint.getData(feature);
-                int bin;
-                if (value == max) {
-                    // Max ele would get its own bin when applying formula
-                    // nonsense, so put in last bin
-                    bin = bins - 1;
-                } else {
-                    bin = (int) Math.floor((value - min) / bin_width);
-                }
-                
-                binSizes[bin]++;
-            }
-
-            // Assert at least 2* minclustersize size of set
-            // Search Start / End for consec empty bin search
-            
-            int start = 0; 
-            int dpsSoFar = 0;
-            do {
-                dpsSoFar += binSizes[start++];
-            } while (dpsSoFar < minclustersize);
-
-            dpsSoFar = 0;
-            int end = getLength() - 1;
-            do {
-                dpsSoFar += binSizes[end--];
-            } while (dpsSoFar < minclustersize);
-
-            // Search max. consecutive empty bins
-            int secondMostConsecEmpty = -100; // placeholder
-            int maxConsecEmpty = -1; // placeholder
-            int maxConsecBegin = 0; // placeholder
-
-            // TODO: Write debug trace
-            for (int i = start; i < end; i++) {
-                int emptyFromHere = countEmptyBins(binSizes,i);
-                // geq neccesary for correctness check to work
-                // (otherwise multiple equal size gaps would not cause a warning)
-                if (emptyFromHere >= maxConsecEmpty) {
-                    secondMostConsecEmpty = maxConsecEmpty;
-                    maxConsecEmpty = emptyFromHere;
-                    maxConsecBegin = i;
-                }
-            }
-            // Check if our approximation is correct
-            if (secondMostConsecEmpty >= maxConsecEmpty - 1) {
-                System.err.println("WARN: performed not uniquely approximated split!");
-            }
-
-            double diff = ((double) maxConsecEmpty) * bin_width;
-            if (diff > maxDiff) {
-                maxDiff = diff;
-                maxDiffFeature = feature;
-                pivot = ((double) maxConsecBegin + maxConsecEmpty) * bin_width + min;
+    private boolean split_maxdiff(NodeProbe probe) {
+        // minclustersize outliers on each side, but never an empty side
+        int margin = Math.max(minclustersize, 1);
+        if (isSampled()) {
+            probe.begin();
+            int[] sample = sampleRows(params.getSampleSize());
+            // As many outliers in the sample as among all points
+            Candidate sampled = searchMaxdiff(sample, Math.max(1, (int) ((long) margin * sample.length / getLength())));
+            // Exact search for comparison, only if it is logged
+            Candidate exact = LOG.isLoggable(Level.FINE) ? searchMaxdiff(null, margin) : null;
+            probe.end(BuildPhase.MAXDIFF_SEARCH);
+            if (!(sampled.gap > params.getTreshMaxdiff())) {
+                if (exact != null && exact.gap > params.getTreshMaxdiff())
+                    LOG.info(() -> String.format("Node of %d points at depth %d: sample has no maxdiff split,"
+                            + " exact search found a gap of %g in feature %d", getLength(), getDepth(), exact.gap, exact.feature));
+                return false;
             }
+            if (splitBySampledGap(sampled, margin, exact, probe))
+                return true;
+            // Gap rejected: Search all points after all
         }
+        probe.begin();
+        Candidate candidate = searchMaxdiff(null, margin);
+        probe.end(BuildPhase.MAXDIFF_SEARCH);
         // Can a split be performed
         // Criteria A: greater than tresh; Criteria B: clusters will be large enough
-        if (maxDiff > tresh_maxdiff) {
+        if (candidate.gap > params.getTreshMaxdiff()) {
             // Yes --> Split by pivot
-            splitByPivot(maxDiffFeature, pivot);
+            splitByPivot(candidate.feature, MaxGap.pivot(candidate.lower, candidate.upper), SplitType.MAXDIFF, probe);
             return true;
         } else {
             return false;
         }
     }
 
-    private int countEmptyBins (int[] binSizes, int pos) {
-        int cnt = 0;
-        while (binSizes[++pos] == 0 && pos < binSizes.length)
-            cnt++;
-        return cnt;
+    /**
+     * Searches the largest gap of all features
+     * 
+     * @param sample Rows to search, null to search all points of the node
+     * @param margin Minimum number of searched values on each side of the gap
+     * @return Largest gap, the first feature wins among equal ones
+     */
+    private Candidate searchMaxdiff(int[] sample, int margin) {
+        if (sample == null && params.getPool() != null && getLength() >= params.getParallelSplitCutoff())
+            return searchMaxdiffParallel(margin);
+        Candidate candidate = new Candidate(); // Maximum (so Far)
+        MaxGap maxGap = new MaxGap(sample == null ? getLength() : sample.length); // buckets for all features
+        double[] values = sample == null ? null : new double[sample.length];
+        for (int feature = 0; feature < getDim(); feature++) { // for all features
+            if (sample == null) {
+                // Exact largest gap between the outliers
+                maxGap.search(copyValues(feature), getFrom(), getTo(), margin);
+            } else {
+                Column column = getMatrix().getColumn(feature);
+                for (int i = 0; i < sample.length; i++)
+                    values[i] = column.get(sample[i]);
+                maxGap.search(values, 0, values.length, margin);
+            }
+            if (maxGap.getGap() > candidate.gap) {
+                candidate.gap = maxGap.getGap();
+                candidate.feature = feature;
+                candidate.lower = maxGap.getLower();
+                candidate.upper = maxGap.getUpper();
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * Searches the largest gap of all features like searchMaxdiff,
+     * with all threads of the pool scanning the values of one feature after another.
+     * 
+     * @param margin Minimum number of points on each side of the gap
+     * @return Largest gap, the first feature wins among equal ones
+     */
+    private Candidate searchMaxdiffParallel(int margin) {
+        Candidate candidate = new Candidate(); // Maximum (so Far)
+        ParallelMaxGap maxGap = new ParallelMaxGap(getLength(), params); // buckets for all features
+        for (int feature = 0; feature < getDim(); feature++) { // for all features
+            maxGap.search(this, feature, margin);
+            if (maxGap.getGap() > candidate.gap) {
+                candidate.gap = maxGap.getGap();
+                candidate.feature = feature;
+                candidate.lower = maxGap.getLower();
+                candidate.upper = maxGap.getUpper();
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * Splits the node at a gap found in a sample, if the gap holds for all points.
+     * The gap of all points is known from the statistics of both sides after partitioning.
+     * 
+     * @param sampled Gap of the sample
+     * @param margin  Minimum number of points on each side of the gap
+     * @param exact   Gap of all points for comparison, null if unknown
+     * @param probe   measurement of the node
+     * @return false if the gap was rejected, the node is not split then (but its points are reordered)
+     */
+    private boolean splitBySampledGap(Candidate sampled, int margin, Candidate exact, NodeProbe probe) {
+        int feature = sampled.feature;
+        probe.begin();
+        NodeStatistics leftStats = new NodeStatistics(getDim());
+        NodeStatistics rightStats = new NodeStatistics(getDim());
+        int mid = partition(feature, MaxGap.pivot(sampled.lower, sampled.upper), leftStats, rightStats);
+        probe.end(BuildPhase.PARTITION);
+        if (mid - getFrom() < margin || getTo() - mid < margin) {
+            LOG.info(() -> String.format("Node of %d points at depth %d: sampled maxdiff split of feature %d rejected,"
+                    + " %d points are below it", getLength(), getDepth(), feature, mid - getFrom()));
+            return false;
+        }
+        double lower = leftStats.getMaximum(feature);
+        double upper = rightStats.getMinimum(feature);
+        if (!(upper - lower > params.getTreshMaxdiff())) {
+            LOG.info(() -> String.format("Node of %d points at depth %d: sampled maxdiff split of feature %d rejected,"
+                    + " gap of all points is %g", getLength(), getDepth(), feature, upper - lower));
+            return false;
+        }
+        if (exact != null) {
+            if (exact.feature != feature || exact.lower != lower || exact.upper != upper) {
+                LOG.info(() -> String.format("Node of %d points at depth %d: sampled maxdiff split (feature %d, gap %g)"
+                        + " differs from exact one (feature %d, gap %g)", getLength(), getDepth(),
+                        feature, upper - lower, exact.feature, exact.gap));
+            } else {
+                LOG.fine(() -> String.format("Node of %d points at depth %d: sampled maxdiff split equals exact one",
+                        getLength(), getDepth()));
+            }
+        }
+        // Pivot in the middle of the exact gap, the partition stays the same
+        buildChildren(feature, MaxGap.pivot(lower, upper), SplitType.MAXDIFF, mid, leftStats, rightStats, probe);
+        return true;
     }
 
     /**
      * Splits the node among the median of the feature with max variance
      */
-    private void split_variance() {
+    private void split_variance(NodeProbe probe) {
         // Search max variance
         double maxVariance = -1.0; // Placeholder val
         int maxVarianceFeature = -1;
         for (int feature = 0; feature < getDim(); feature++) { // For all feautres
             double variance = getVariance(feature); // calc variance
             // test if over tresh and and max
-            if (variance >= tresh_variance && variance > maxVariance) {
+            if (variance >= params.getTreshVariance() && variance > maxVariance) {
                 maxVariance = variance;
                 maxVarianceFeature = feature;
             }
         }
         // Can a split be performed
         if (maxVarianceFeature >= 0) {
-            splitByPivot(maxVarianceFeature, getMean(maxVarianceFeature));
+            if (isSampled() && splitBySampledMedian(maxVarianceFeature, probe))
+                return;
+            probe.begin();
+            double mean = selectMean(maxVarianceFeature, params.getMedianSelection());
+            probe.end(BuildPhase.MEDIAN_SELECTION);
+            splitByPivot(maxVarianceFeature, mean, SplitType.VARIANCE, probe);
+        } else {
+            // Found no splitting dimension. Node is left as is
+            probe.finish(SplitType.LEAF);
+        }
+    }
+
+    /**
+     * Splits the node at the median of a sample. The ranks of the median among all points
+     * are counted while partitioning, a median differing from the exact one is logged.
+     * 
+     * @param feature decisive feature
+     * @param probe   measurement of the node
+     * @return false if the split was degenerated, the node is not split then
+     */
+    private boolean splitBySampledMedian(int feature, NodeProbe probe) {
+        probe.begin();
+        int[] sample = sampleRows(params.getSampleSize());
+        Column column = getMatrix().getColumn(feature);
+        double[] values = new double[sample.length];
+        for (int i = 0; i < sample.length; i++)
+            values[i] = column.get(sample[i]);
+        double mean = Selection.select(values, 0, values.length, values.length / 2);
+        probe.end(BuildPhase.MEDIAN_SELECTION);
+        probe.begin();
+        NodeStatistics leftStats = new NodeStatistics(getDim());
+        NodeStatistics rightStats = new NodeStatistics(getDim());
+        PivotTest isLeft = new PivotTest(column, mean);
+        int mid = partition(isLeft, leftStats, rightStats);
+        probe.end(BuildPhase.PARTITION);
+        if (mid == getFrom() || mid == getTo()) {
+            LOG.info(() -> String.format("Node of %d points at depth %d: sampled median of feature %d"
+                    + " leaves a side empty, exact median is used", getLength(), getDepth(), feature));
+            return false;
+        }
+        // Exact median is the value of this rank, the sampled one has the ranks [less, mid - from)
+        int rank = getLength() / 2;
+        int less = mid - getFrom() - isLeft.equal;
+        if (less > rank || rank >= mid - getFrom()) {
+            // Off by more than the sample size promises: worth a notice
+            int error = Math.max(less - rank, rank - (mid - getFrom() - 1));
+            Level level = error > TreeParameters.SAMPLING_RANK_ERROR * getLength() ? Level.INFO : Level.FINE;
+            LOG.log(level, () -> String.format("Node of %d points at depth %d: sampled median of feature %d"
+                    + " has ranks %d to %d instead of %d", getLength(), getDepth(), feature, less, mid - getFrom() - 1, rank));
         }
-        // ELSE: Found no splitting dimension. Node is left as is
+        buildChildren(feature, mean, SplitType.VARIANCE, mid, leftStats, rightStats, probe);
+        return true;
+    }
+
+    /**
+     * @return whether the split is chosen from a sample
+     */
+    private boolean isSampled() {
+        return params.getSamplingThreshold() > 0 && getLength() > params.getSamplingThreshold()
+                && getLength() > params.getSampleSize();
     }
 
     /**
      * Splits the node at pivot
      * 
      * @param feature decisive feature
-     * @param pivot   number of pivot element
-     */
-    private void splitByPivot(int feature, double value) {
-        HashSet<DataPoint> leq = new HashSet<>(); // <=
-        HashSet<DataPoint> ge = new HashSet<>(); // >
-        for (DataPoint dp : getSet()) {
-            if (dp.getData(feature) <= value) {
-                leq.add(dp);
+     * @param value   pivot value
+     * @param type    kind of split, for the probe
+     * @param probe   measurement of the node
+     */
+    private void splitByPivot(int feature, double value, SplitType type, NodeProbe probe) {
+        // Left is leq pivot, right is ge pivot
+        probe.begin();
+        NodeStatistics leftStats = new NodeStatistics(getDim());
+        NodeStatistics rightStats = new NodeStatistics(getDim());
+        int mid = partition(feature, value, leftStats, rightStats);
+        probe.end(BuildPhase.PARTITION);
+        buildChildren(feature, value, type, mid, leftStats, rightStats, probe);
+    }
+
+    /**
+     * Builds the children of a partitioned node
+     * 
+     * @param feature    decisive feature
+     * @param value      pivot value
+     * @param type       kind of split, for the probe
+     * @param mid        Position in the permutation where the right child starts
+     * @param leftStats  Statistics of the left child
+     * @param rightStats Statistics of the right child
+     * @param probe      measurement of the node
+     */
+    private void buildChildren(int feature, double value, SplitType type, int mid,
+            NodeStatistics leftStats, NodeStatistics rightStats, NodeProbe probe) {
+        // Degenerated split: Node is left as is
+        if (mid == getFrom() || mid == getTo()) {
+            probe.finish(SplitType.LEAF);
+            return;
+        }
+        probe.finish(type);
+        // Both children may be built in parallel
+        Subtrees.build(params, getLength(),
+                () -> left = new MaxdiffKDTreeNode(this, getFrom(), mid, leftStats),
+                () -> right = new MaxdiffKDTreeNode(this, mid, getTo(), rightStats));
+        setSplit(feature, value, left.getLeafCount() + right.getLeafCount());
+    }
+
+    /**
+     * Inserts a point into the tree, which must be the root.
+     * Not thread safe: Nobody may read the tree while a point is inserted.
+     * 
+     * @param point Point of the dimension of the tree
+     * @throws DataPointMalformattedException if point has the wrong dimension
+     * @throws IllegalArgumentException if point is not normalized
+     */
+    public void insert(DataPoint point) throws DataPointMalformattedException {
+        if (point.getDim() != getDim())
+            throw new DataPointMalformattedException("Data Point has wrong dimension", point);
+        double[] values = new double[getDim()];
+        for (int feature = 0; feature < getDim(); feature++)
+            values[feature] = point.getData(feature);
+        insert(getMatrix().append(values));
+    }
+
+    /**
+     * Inserts points into the tree, which must be the root.
+     * 
+     * @param points Points of the dimension of the tree
+     * @throws DataPointMalformattedException if a point has the wrong dimension
+     */
+    public void insertAll(Collection<DataPoint> points) throws DataPointMalformattedException {
+        for (DataPoint point : points)
+            insert(point);
+    }
+
+    /**
+     * Adds an appended row to this node and to the leaf it belongs to
+     */
+    @Override
+    protected void insert(int row) {
+        super.insert(row);
+        if (left == null) {
+            // Split again once grown enough
+            int constructed = getLength() - getInsertedCount();
+            if (getInsertedCount() >= (params.getGrowthFactor() - 1.0) * constructed) {
+                rebase();
+                split();
+            }
+        } else {
+            if (getMatrix().get(row, getSplitFeature()) <= getSplitValue()) {
+                left.insert(row);
             } else {
-                ge.add(dp);
+                right.insert(row);
             }
-        }  
-        try {
-            // Left is leq pivot
-            left = new MaxdiffKDTreeNode(leq, tresh_maxdiff, tresh_variance);
-            // Right is ge pivot
-            right = new MaxdiffKDTreeNode(ge, tresh_maxdiff, tresh_variance);
-        } catch (DataPointMalformattedException e) {
-            // This error cannot happen
-            System.err.println("Unspecified condition: Set not sane anymore");
-            // Since that case MUST NOT HAPPEN BY DESIGN
-            // we dont't do exception handling, we just quit.
-            System.exit(-1);
+            setLeafCount(left.getLeafCount() + right.getLeafCount());
         }
-        
     }
 
     /**
@@ -197,4 +417,35 @@ public class MaxdiffKDTreeNode extends DataSet implements TreeNode {
     public MaxdiffKDTreeNode getRight() {
         return right;
     }
-}
\ No newline at end of file
+
+    /**
+     * Gap of a feature, chosen for a maxdiff split
+     */
+    private static final class Candidate {
+        int feature = -1;
+        double gap = -1.0;
+        double lower, upper;
+    }
+
+    /**
+     * Partition predicate of a pivot, counting the values equal to the pivot on the way
+     */
+    private static final class PivotTest implements IntPredicate {
+        private final Column column;
+        private final double pivot;
+        int equal;
+
+        PivotTest(Column column, double pivot) {
+            this.column = column;
+            this.pivot = pivot;
+        }
+
+        @Override
+        public boolean test(int row) {
+            double val = column.get(row);
+            if (val == pivot)
+                equal++;
+            return val <= pivot;
+        }
+    }
+}
@@ -1,13 +1,12 @@
 package de.laurenzgrote.rwth.kdtrees.data;
 
 import java.util.Collection;
-import java.util.HashSet;
 
 /**
  * MedianKDTreeNode. A node in a KD Tree, containing data points
  */
 public class MedianKDTreeNode extends DataSet implements TreeNode {
-    private double tresh_maxdiff, tresh_variance;
+    private TreeParameters params;
     // Children containing the subsets
     private MedianKDTreeNode left, right;
 
@@ -19,9 +18,48 @@ public class MedianKDTreeNode extends DataSet implements TreeNode {
      */
     public MedianKDTreeNode(Collection<DataPoint> set, double tresh_maxdiff, double tresh_variance)
             throws DataPointMalformattedException {
+        this(set, new TreeParameters(tresh_maxdiff, tresh_variance));
+    }
+
+    /**
+     * Constructs MedianKDTreeNode from List of DataPoints (used in initialization)
+     * 
+     * @param params Tresholds and parallelism of the construction
+     */
+    public MedianKDTreeNode(Collection<DataPoint> set, TreeParameters params)
+            throws DataPointMalformattedException {
         super(set);
-        this.tresh_maxdiff = tresh_maxdiff;
-        this.tresh_variance = tresh_variance;
+        this.params = params;
+        split(); // Split node, if possible
+    }
+
+    /**
+     * Constructs MedianKDTreeNode from all rows of a matrix (used in initialization)
+     * 
+     * @param tresh_maxdiff  Minimum difference for a maxdiff split
+     * @param tresh_variance Minimum variance for a median variance split
+     */
+    public MedianKDTreeNode(DataMatrix matrix, double tresh_maxdiff, double tresh_variance) {
+        this(matrix, new TreeParameters(tresh_maxdiff, tresh_variance));
+    }
+
+    /**
+     * Constructs MedianKDTreeNode from all rows of a matrix (used in initialization)
+     * 
+     * @param params Tresholds and parallelism of the construction
+     */
+    public MedianKDTreeNode(DataMatrix matrix, TreeParameters params) {
+        super(matrix);
+        this.params = params;
+        split(); // Split node, if possible
+    }
+
+    /**
+     * Constructs MedianKDTreeNode from a partitioned range of the parent
+     */
+    private MedianKDTreeNode(MedianKDTreeNode parent, int from, int to, NodeStatistics stats) {
+        super(parent, from, to, stats);
+        this.params = parent.params;
         split(); // Split node, if possible
     }
 
@@ -32,61 +70,66 @@ public class MedianKDTreeNode extends DataSet implements TreeNode {
         // First try to split by maxdiff,
         // if unsuccesful: Split by variance
         // Don't split if current cluster to small (Must be 2x Minsize)
-        if (getLength() > 2*minclustersize)
-            split_variance();
+        NodeProbe probe = NodeProbe.start(params, getDepth(), getLength());
+        if (getLength() > 2*minclustersize) {
+            split_variance(probe);
+        } else {
+            probe.finish(SplitType.LEAF);
+        }
     }
 
     /**
      * Splits the node among the median of the feature with max variance
      */
-    private void split_variance() {
+    private void split_variance(NodeProbe probe) {
         // Search max variance
         double maxVariance = -1.0; // Placeholder val
         int maxVarianceFeature = -1;
         for (int feature = 0; feature < getDim(); feature++) { // For all feautres
             double variance = getVariance(feature); // calc variance
             // test if over tresh and and max
-            if (variance >= tresh_variance && variance > maxVariance) {
+            if (variance >= params.getTreshVariance() && variance > maxVariance) {
                 maxVariance = variance;
                 maxVarianceFeature = feature;
             }
         }
         // Can a split be performed
         if (maxVarianceFeature >= 0) {
-            splitByPivot(maxVarianceFeature, getMean(maxVarianceFeature));
+            probe.begin();
+            double mean = selectMean(maxVarianceFeature, params.getMedianSelection());
+            probe.end(BuildPhase.MEDIAN_SELECTION);
+            splitByPivot(maxVarianceFeature, mean, probe);
+        } else {
+            // Found no splitting dimension. Node is left as is
+            probe.finish(SplitType.LEAF);
         }
-        // ELSE: Found no splitting dimension. Node is left as is
     }
 
     /**
      * Splits the node at pivot
      * 
      * @param feature decisive feature
-     * @param pivot   number of pivot element
+     * @param value   pivot value
+     * @param probe   measurement of the node
      */
-    private void splitByPivot(int feature, double value) {
-        HashSet<DataPoint> leq = new HashSet<>(); // <=
-        HashSet<DataPoint> ge = new HashSet<>(); // >
-        for (DataPoint dp : getSet()) {
-            if (dp.getData(feature) <= value) {
-                leq.add(dp);
-            } else {
-                ge.add(dp);
-            }
-        }  
-        try {
-            // Left is leq pivot
-            left = new MedianKDTreeNode(leq, tresh_maxdiff, tresh_variance);
-            // Right is ge pivot
-            right = new MedianKDTreeNode(ge, tresh_maxdiff, tresh_variance);
-        } catch (DataPointMalformattedException e) {
-            // This error cannot happen
-            System.err.println("Unspecified condition: Set not sane anymore");
-            // Since that case MUST NOT HAPPEN BY DESIGN
-            // we dont't do exception handling, we just quit.
-            System.exit(-1);
+    private void splitByPivot(int feature, double value, NodeProbe probe) {
+        // Left is leq pivot, right is ge pivot
+        probe.begin();
+        NodeStatistics leftStats = new NodeStatistics(getDim());
+        NodeStatistics rightStats = new NodeStatistics(getDim());
+        int mid = partition(feature, value, leftStats, rightStats);
+        probe.end(BuildPhase.PARTITION);
+        // Degenerated split: Node is left as is
+        if (mid == getFrom() || mid == getTo()) {
+            probe.finish(SplitType.LEAF);
+            return;
         }
-        
+        probe.finish(SplitType.VARIANCE);
+        // Both children may be built in parallel
+        Subtrees.build(params, getLength(),
+                () -> left = new MedianKDTreeNode(this, getFrom(), mid, leftStats),
+                () -> right = new MedianKDTreeNode(this, mid, getTo(), rightStats));
+        setSplit(feature, value, left.getLeafCount() + right.getLeafCount());
     }
 
     /**
@@ -0,0 +1,12 @@
+package de.laurenzgrote.rwth.kdtrees.data;
+
+/**
+ * MedianSelection. How the median of a feature is found for a variance split.
+ * Both yield the same value.
+ */
+public enum MedianSelection {
+    // Sort all values of the node: O(n log n)
+    SORT,
+    // Introselect on the values of the node: O(n), also in the worst case
+    INTROSELECT
+}
@@ -0,0 +1,85 @@
+package de.laurenzgrote.rwth.kdtrees.data;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * NodeProbe. Measures the split of a single node for the BuildListener of the parameters.
+ * Without a listener the shared disabled probe is used, which measures nothing.
+ */
+final class NodeProbe {
+
+    private static final NodeProbe DISABLED = new NodeProbe(null, 0, 0);
+
+    private final BuildListener listener;
+    private final int depth, size;
+    private final long[] nanos;
+    private final long startBytes;
+    private long phaseStart;
+
+    private NodeProbe(BuildListener listener, int depth, int size) {
+        this.listener = listener;
+        this.depth = depth;
+        this.size = size;
+        this.nanos = listener == null ? null : new long[BuildPhase.values().length];
+        this.startBytes = listener == null ? 0 : Allocation.bytes();
+    }
+
+    /**
+     * @return Probe for a node which is going to be split
+     */
+    static NodeProbe start(TreeParameters params, int depth, int size) {
+        BuildListener listener = params.getListener();
+        return listener == null ? DISABLED : new NodeProbe(listener, depth, size);
+    }
+
+    /**
+     * Starts measuring a phase
+     */
+    void begin() {
+        if (listener != null)
+            phaseStart = System.nanoTime();
+    }
+
+    /**
+     * Stops measuring a phase
+     */
+    void end(BuildPhase phase) {
+        if (listener != null)
+            nanos[phase.ordinal()] += System.nanoTime() - phaseStart;
+    }
+
+    /**
+     * Reports the node, must be called once
+     */
+    void finish(SplitType split) {
+        if (listener != null) {
+            long bytes = Allocation.bytes();
+            listener.nodeBuilt(depth, size, split, nanos, bytes < 0 ? -1 : bytes - startBytes);
+        }
+    }
+
+    /**
+     * Allocated bytes of the current thread, initialized on first use only
+     */
+    private static class Allocation {
+        private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+        private static com.sun.management.ThreadMXBean threads() {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+                if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled())
+                    return hotspot;
+            }
+            return null;
+        }
+
+        /**
+         * @return Bytes allocated by the current thread so far, -1 if unknown
+         */
+        static long bytes() {
+            return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package de.laurenzgrote.rwth.kdtrees.data;
+
+import java.util.Arrays;
+
+/**
+ * NodeStatistics. Summary statistics of all features of a set of data points.
+ * Points are added one by one, all features are updated in the same pass.
+ * Average and variance are maintained with Welford's algorithm,
+ * which is numerically stable: https://doi.org/10.1080/00401706.1962.10490022
+ */
+public class NodeStatistics {
+
+    private int length;
+    private final double[] minimum, maximum;
+    private final double[] avg;
+    // Sum of squared differences from the current average
+    private final double[] m2;
+
+    /**
+     * Creates statistics of an empty set
+     * @param dim Dimension of the data points
+     */
+    public NodeStatistics(int dim) {
+        this.minimum = new double[dim];
+        this.maximum = new double[dim];
+        this.avg = new double[dim];
+        this.m2 = new double[dim];
+        Arrays.fill(minimum, 1.0); // normalized, highest possible
+        Arrays.fill(maximum, 0.0); // normalized, lowest possible
+    }
+
+    /**
+     * Restores statistics computed before (e.g. read from a snapshot)
+     * @param length  Number of points
+     * @param minimum Minimum of every feature
+     * @param maximum Maximum of every feature
+     * @param avg     Average of every feature
+     * @param m2      Sum of squared differences from the average of every feature
+     */
+    public NodeStatistics(int length, double[] minimum, double[] maximum, double[] avg, double[] m2) {
+        this.length = length;
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.avg = avg;
+        this.m2 = m2;
+    }
+
+    /**
+     * Adds a row of a matrix to the set
+     * @param matrix Matrix containing the row
+     * @param row    Row to be added
+     */
+    public void add(DataMatrix matrix, int row) {
+        length++;
+        for (int feature = 0; feature < avg.length; feature++) {
+            double val = matrix.get(row, feature);
+            if (val < minimum[feature])
+                minimum[feature] = val;
+            if (val > maximum[feature])
+                maximum[feature] = val;
+            double delta = val - avg[feature];
+            avg[feature] += delta / length;
+            m2[feature] += delta * (val - avg[feature]);
+        }
+    }
+
+    /**
+     * @return number of points added
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @param feature Feature currently looked at
+     * @return Minimum value in the set of the feature
+     */
+    public double getMinimum(int feature) {
+        return minimum[feature];
+    }
+
+    /**
+     * @param feature Feature currently looked at
+     * @return Maximum value in the set of the feature
+     */
+    public double getMaximum(int feature) {
+        return maximum[feature];
+    }
+
+    /**
+     * @param feature Feature currently looked at
+     * @return Average value in the set of the feature
+     */
+    public double getAvg(int feature) {
+        return avg[feature];
+    }
+
+    /**
+     * @param feature Feature currently looked at
+     * @return (sample) variance of the given feature
+     */
+    public double getVariance(int feature) {
+        return m2[feature] / (double) (length - 1);
+    }
+
+    /**
+     * @param feature Feature currently looked at
+     * @return Sum of squared differences from the average of the given feature
+     */
+    public double getSquaredDeviation(int feature) {
+        return m2[feature];
+    }
+}
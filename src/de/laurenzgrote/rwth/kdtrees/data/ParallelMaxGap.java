@@ -0,0 +1,391 @@
+package de.laurenzgrote.rwth.kdtrees.data;
+
+import java.util.Arrays;
+
+/**
+ * ParallelMaxGap. Searches the largest gap of a feature like MaxGap, but every pass over the values
+ * is cut into chunks, which are scanned by the tasks of the pool of the parameters.
+ * So a single feature keeps all threads busy, at the top of the tree where nodes are few and large.
+ *
+ * Instead of reordering the values, the bounds of the outliers are selected by histograms:
+ * Every chunk counts its values per bin, the bin holding the wanted rank is divided again
+ * until it holds a single value or few enough to be selected from sequentially.
+ * Then the values between the bounds are moved into one part per task, each part covering
+ * a range of buckets of its own, so the tasks fill disjoint buckets of one shared array.
+ * The gaps within the parts and between them are compared in bucket order.
+ * As bounds and bucket contents depend on the values only, the gap is the one MaxGap finds,
+ * the first of equal gaps winning. The values are gathered into the selection buffer of the set,
+ * so memory is that of MaxGap plus a histogram per task, it does not grow with the number of threads.
+ */
+class ParallelMaxGap {
+
+    // Bins of a histogram round
+    private static final int BINS = 1024;
+    // Candidates for a rank are selected sequentially once no more than this are left
+    private static final int SELECT_SIZE = 1 << 16;
+    // Histogram rounds before the candidates are selected sequentially anyway (e.g. skewed values)
+    private static final int MAX_ROUNDS = 4;
+
+    private final TreeParameters params;
+    private final int chunks;
+    // Values of the feature, then maxima of the buckets: selection buffer of the searched set from base on
+    private double[] values;
+    private int base;
+    // Candidates of the lower bound, then minima of the buckets
+    private final double[] bucketMin;
+    // Candidates of the upper bound, then the values between the bounds grouped by part
+    private final double[] moved;
+    // Histogram of every chunk: counts[chunk][bin], minimum and maximum of the values in the bin
+    private final int[][] counts;
+    private final double[][] binMin, binMax;
+    // Histogram of all chunks
+    private final int[] totalCount = new int[BINS];
+    private final double[] totalMin = new double[BINS], totalMax = new double[BINS];
+    // Per chunk: minimum and maximum, candidates of both bounds collected
+    private final double[] chunkMin, chunkMax;
+    private final int[] loCount, hiCount;
+    // partOffsets[chunk][part]: values of a chunk falling into a part, then where they are moved to
+    private final int[][] partOffsets;
+    // Per part: first and last value of its buckets, largest gap within
+    private final double[] partFirst, partLast, partGap, partLower, partUpper;
+
+    // Result of the last search
+    private double gap, lower, upper;
+
+    /**
+     * @param capacity Maximum number of values searched
+     * @param params   Parameters of the tree, with a pool
+     */
+    ParallelMaxGap(int capacity, TreeParameters params) {
+        this.params = params;
+        this.chunks = params.getPool().getParallelism();
+        this.bucketMin = new double[capacity];
+        this.moved = new double[capacity];
+        this.counts = new int[chunks][BINS];
+        this.binMin = new double[chunks][BINS];
+        this.binMax = new double[chunks][BINS];
+        this.chunkMin = new double[chunks];
+        this.chunkMax = new double[chunks];
+        this.loCount = new int[chunks];
+        this.hiCount = new int[chunks];
+        this.partOffsets = new int[chunks][chunks];
+        this.partFirst = new double[chunks];
+        this.partLast = new double[chunks];
+        this.partGap = new double[chunks];
+        this.partLower = new double[chunks];
+        this.partUpper = new double[chunks];
+    }
+
+    /**
+     * Searches the largest gap of a feature of a set
+     * @param set     Set to search, the values are read only
+     * @param feature feature to search
+     * @param margin  minimum number of values on each side of the gap (at least 1)
+     */
+    void search(DataSet set, int feature, int margin) {
+        int n = set.getLength();
+        gap = 0.0;
+        lower = upper = Double.NaN;
+        if (n < 2 * margin)
+            return;
+        Column column = set.getMatrix().getColumn(feature);
+        values = set.getSelectionBuffer();
+        base = set.getFrom();
+        forEachChunk(n, (chunk, start, end) -> {
+            double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            for (int i = start; i < end; i++) {
+                double val = column.get(set.getRow(i));
+                values[base + i] = val;
+                if (val < min)
+                    min = val;
+                if (val > max)
+                    max = val;
+            }
+            chunkMin[chunk] = min;
+            chunkMax[chunk] = max;
+        });
+        Candidates all = new Candidates(min(chunkMin), max(chunkMax), 0, n);
+        // Smallest and largest value which may border a gap
+        int loRank = margin - 1;
+        int hiRank = n - margin;
+        double lo, hi;
+        if (all.low == all.high) {
+            lo = hi = all.low;
+        } else {
+            // The first round is the same for both bounds, later rounds overwrite it
+            histogram(n, all);
+            Candidates loCandidates = narrow(loRank, all);
+            Candidates hiCandidates = narrow(hiRank, all);
+            loCandidates = divide(n, loRank, loCandidates);
+            hiCandidates = divide(n, hiRank, hiCandidates);
+            collect(n, loCandidates, hiCandidates);
+            lo = select(loRank, loCandidates, bucketMin);
+            hi = select(hiRank, hiCandidates, moved);
+        }
+        lower = upper = lo;
+        if (hi <= lo)
+            return;
+        // The values between lo and hi: the same buckets as MaxGap fills
+        int buckets = hiRank - loRank + 1;
+        double width = (hi - lo) / buckets;
+        int partSize = (buckets + chunks - 1) / chunks;
+        // Count the values of every chunk per part
+        forEachChunk(n, (chunk, start, end) -> {
+            int[] offsets = partOffsets[chunk];
+            Arrays.fill(offsets, 0);
+            for (int i = start; i < end; i++) {
+                double val = values[base + i];
+                if (val >= lo && val <= hi)
+                    offsets[Math.min(buckets - 1, (int) ((val - lo) / width)) / partSize]++;
+            }
+        });
+        // Parts one after another, chunks in order within a part
+        int[] partStart = new int[chunks + 1];
+        int offset = 0;
+        for (int part = 0; part < chunks; part++) {
+            partStart[part] = offset;
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                int cnt = partOffsets[chunk][part];
+                partOffsets[chunk][part] = offset;
+                offset += cnt;
+            }
+        }
+        partStart[chunks] = offset;
+        forEachChunk(n, (chunk, start, end) -> {
+            int[] offsets = partOffsets[chunk];
+            for (int i = start; i < end; i++) {
+                double val = values[base + i];
+                if (val >= lo && val <= hi)
+                    moved[offsets[Math.min(buckets - 1, (int) ((val - lo) / width)) / partSize]++] = val;
+            }
+        });
+        // Every part fills and scans its own buckets, the values are not needed anymore
+        forEachChunk(buckets, (part, first, last) -> {
+            Arrays.fill(bucketMin, first, last, Double.POSITIVE_INFINITY);
+            Arrays.fill(values, base + first, base + last, Double.NEGATIVE_INFINITY);
+            for (int i = partStart[part]; i < partStart[part + 1]; i++) {
+                double val = moved[i];
+                int bucket = Math.min(buckets - 1, (int) ((val - lo) / width));
+                if (val < bucketMin[bucket])
+                    bucketMin[bucket] = val;
+                if (val > values[base + bucket])
+                    values[base + bucket] = val;
+            }
+            double prevMax = Double.NaN;
+            partFirst[part] = Double.NaN;
+            partGap[part] = 0.0;
+            for (int bucket = first; bucket < last; bucket++) {
+                if (bucketMin[bucket] == Double.POSITIVE_INFINITY)
+                    continue; // empty
+                if (Double.isNaN(prevMax)) {
+                    partFirst[part] = bucketMin[bucket];
+                } else if (bucketMin[bucket] - prevMax > partGap[part]) { // first of equal gaps wins
+                    partGap[part] = bucketMin[bucket] - prevMax;
+                    partLower[part] = prevMax;
+                    partUpper[part] = bucketMin[bucket];
+                }
+                prevMax = values[base + bucket];
+            }
+            partLast[part] = prevMax;
+        });
+        // In bucket order: gap before a part, then the gaps within
+        double prevMax = Double.NaN;
+        for (int part = 0; part < chunks; part++) {
+            if (Double.isNaN(partFirst[part]))
+                continue; // no values
+            if (!Double.isNaN(prevMax) && partFirst[part] - prevMax > gap) {
+                gap = partFirst[part] - prevMax;
+                lower = prevMax;
+                upper = partFirst[part];
+            }
+            if (partGap[part] > gap) {
+                gap = partGap[part];
+                lower = partLower[part];
+                upper = partUpper[part];
+            }
+            prevMax = partLast[part];
+        }
+    }
+
+    /**
+     * Values of a search which may have a rank: those in [low, high]
+     */
+    private static final class Candidates {
+        final double low, high;
+        // Number of values less than low
+        final int below;
+        final int count;
+
+        Candidates(double low, double high, int below, int count) {
+            this.low = low;
+            this.high = high;
+            this.below = below;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Divides the candidates of a rank until they are a single value or few enough to be selected from
+     * @param n          Number of values
+     * @param k          wanted rank
+     * @param candidates Values containing the rank, one histogram round done
+     * @return Candidates left
+     */
+    private Candidates divide(int n, int k, Candidates candidates) {
+        for (int round = 1; round < MAX_ROUNDS; round++) {
+            if (candidates.low == candidates.high || candidates.count <= SELECT_SIZE)
+                break;
+            histogram(n, candidates);
+            candidates = narrow(k, candidates);
+        }
+        return candidates;
+    }
+
+    /**
+     * Collects the candidates of both bounds to the front of bucketMin and moved, in the order of the values.
+     * Every chunk collects at its own start, the chunks are moved together afterwards.
+     */
+    private void collect(int n, Candidates lo, Candidates hi) {
+        boolean collectLo = lo.low != lo.high, collectHi = hi.low != hi.high;
+        if (!collectLo && !collectHi)
+            return;
+        forEachChunk(n, (chunk, start, end) -> {
+            int loCnt = 0, hiCnt = 0;
+            for (int i = start; i < end; i++) {
+                double val = values[base + i];
+                if (collectLo && val >= lo.low && val <= lo.high)
+                    bucketMin[start + loCnt++] = val;
+                if (collectHi && val >= hi.low && val <= hi.high)
+                    moved[start + hiCnt++] = val;
+            }
+            loCount[chunk] = loCnt;
+            hiCount[chunk] = hiCnt;
+        });
+        int chunkSize = (n + chunks - 1) / chunks;
+        int loCollected = 0, hiCollected = 0;
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int start = Math.min(n, chunk * chunkSize);
+            System.arraycopy(bucketMin, start, bucketMin, loCollected, loCount[chunk]);
+            loCollected += loCount[chunk];
+            System.arraycopy(moved, start, moved, hiCollected, hiCount[chunk]);
+            hiCollected += hiCount[chunk];
+        }
+    }
+
+    /**
+     * @param k          wanted rank
+     * @param candidates Candidates of the rank
+     * @param collected  Candidates, at the front if they were collected
+     * @return value which would be at position k if the values were sorted
+     */
+    private static double select(int k, Candidates candidates, double[] collected) {
+        if (candidates.low == candidates.high)
+            return candidates.low;
+        return Selection.select(collected, 0, candidates.count, k - candidates.below);
+    }
+
+    /**
+     * Counts the candidates of every bin, over all chunks
+     */
+    private void histogram(int n, Candidates candidates) {
+        double low = candidates.low, high = candidates.high;
+        double width = (high - low) / BINS;
+        forEachChunk(n, (chunk, start, end) -> {
+            int[] count = counts[chunk];
+            double[] min = binMin[chunk], max = binMax[chunk];
+            Arrays.fill(count, 0);
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+            for (int i = start; i < end; i++) {
+                double val = values[base + i];
+                if (val >= low && val <= high) {
+                    // Bins are ordered by value, whatever the rounding
+                    int bin = Math.min(BINS - 1, (int) ((val - low) / width));
+                    count[bin]++;
+                    if (val < min[bin])
+                        min[bin] = val;
+                    if (val > max[bin])
+                        max[bin] = val;
+                }
+            }
+        });
+        Arrays.fill(totalCount, 0);
+        Arrays.fill(totalMin, Double.POSITIVE_INFINITY);
+        Arrays.fill(totalMax, Double.NEGATIVE_INFINITY);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            for (int bin = 0; bin < BINS; bin++) {
+                totalCount[bin] += counts[chunk][bin];
+                totalMin[bin] = Math.min(totalMin[bin], binMin[chunk][bin]);
+                totalMax[bin] = Math.max(totalMax[bin], binMax[chunk][bin]);
+            }
+        }
+    }
+
+    /**
+     * @return Candidates of the bin of the last histogram holding rank k
+     */
+    private Candidates narrow(int k, Candidates candidates) {
+        int below = candidates.below;
+        int bin = 0;
+        while (k - below >= totalCount[bin])
+            below += totalCount[bin++];
+        return new Candidates(totalMin[bin], totalMax[bin], below, totalCount[bin]);
+    }
+
+    /**
+     * Work on a range of positions
+     */
+    private interface ChunkAction {
+        void run(int chunk, int start, int end);
+    }
+
+    /**
+     * Cuts [0, n) into a range per task and runs the action on all of them in the pool
+     */
+    private void forEachChunk(int n, ChunkAction action) {
+        int chunkSize = (n + chunks - 1) / chunks;
+        Runnable[] parts = new Runnable[chunks];
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int c = chunk;
+            int start = Math.min(n, chunk * chunkSize);
+            int end = Math.min(n, start + chunkSize);
+            parts[chunk] = () -> action.run(c, start, end);
+        }
+        Subtrees.runAll(params, parts);
+    }
+
+    private static double min(double[] a) {
+        double min = Double.POSITIVE_INFINITY;
+        for (double d : a)
+            min = Math.min(min, d);
+        return min;
+    }
+
+    private static double max(double[] a) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (double d : a)
+            max = Math.max(max, d);
+        return max;
+    }
+
+    /**
+     * @return Size of the gap found by the last search (0 if none)
+     */
+    double getGap() {
+        return gap;
+    }
+
+    /**
+     * @return Greatest value below the gap found by the last search
+     */
+    double getLower() {
+        return lower;
+    }
+
+    /**
+     * @return Smallest value above the gap found by the last search
+     */
+    double getUpper() {
+        return upper;
+    }
+}
@@ -0,0 +1,156 @@
+package de.laurenzgrote.rwth.kdtrees.data;
+
+/**
+ * Selection. Finds the kth smallest value of an array range in linear time.
+ * Introselect: Quickselect with a median of 3 pivot, which falls back to the
+ * median of medians pivot (https://doi.org/10.1016/S0022-0000(73)80033-9)
+ * once it did not converge fast enough. So adversarial orders cost O(n), too.
+ * The range is reordered in place, nothing is allocated.
+ * Partitioning is done by the given Kernels: Either one three way pass with a branch per value,
+ * or branch free passes which split off the smaller values first and the equal ones only if needed
+ * (as in https://doi.org/10.4230/LIPIcs.ESA.2016.38). Both yield the same value.
+ */
+public abstract class Selection {
+
+    // Ranges up to this size are insertion sorted
+    private static final int SMALL = 16;
+
+    /**
+     * Selects the kth smallest value of a[from, to)
+     * @param a    values, reordered in place
+     * @param from first position (inclusive)
+     * @param to   last position (exclusive)
+     * @param k    wanted position, from <= k < to
+     * @return value which would be at position k if the range was sorted
+     */
+    public static double select(double[] a, int from, int to, int k) {
+        return select(a, from, to, k, Kernels.getDefault());
+    }
+
+    /**
+     * Selects the kth smallest value of a[from, to)
+     * @param a       values, reordered in place
+     * @param from    first position (inclusive)
+     * @param to      last position (exclusive)
+     * @param k       wanted position, from <= k < to
+     * @param kernels Implementation of the partitioning
+     * @return value which would be at position k if the range was sorted
+     */
+    public static double select(double[] a, int from, int to, int k, Kernels kernels) {
+        // Quickselect is granted 2 log n rounds before median of medians is used
+        int rounds = 2 * (32 - Integer.numberOfLeadingZeros(to - from));
+        while (to - from > SMALL) {
+            double pivot;
+            if (rounds > 0) {
+                rounds--;
+                pivot = medianOf3(a[from], a[(from + to) >>> 1], a[to - 1]);
+            } else {
+                pivot = medianOfMedians(a, from, to, kernels);
+            }
+            // Three way partition: [from, lt) < pivot, [lt, gt) == pivot, [gt, to) > pivot
+            int lt, gt;
+            if (kernels == Kernels.SCALAR) {
+                lt = from;
+                gt = to;
+                int i = from;
+                while (i < gt) {
+                    double val = a[i];
+                    if (val < pivot) {
+                        swap(a, lt++, i++);
+                    } else if (val > pivot) {
+                        swap(a, i, --gt);
+                    } else {
+                        i++;
+                    }
+                }
+            } else {
+                lt = partitionLess(a, from, to, pivot);
+                // Equal values are only told from greater ones if k is not among the smaller ones
+                gt = k < lt ? to : partitionNotGreater(a, lt, to, pivot);
+            }
+            if (k < lt) {
+                to = lt;
+            } else if (k >= gt) {
+                from = gt;
+            } else {
+                return pivot;
+            }
+        }
+        insertionSort(a, from, to);
+        return a[k];
+    }
+
+    /**
+     * Median of the medians of groups of five.
+     * The medians are moved to the front of the range.
+     */
+    private static double medianOfMedians(double[] a, int from, int to, Kernels kernels) {
+        int medians = from;
+        for (int group = from; group < to; group += 5) {
+            int groupEnd = Math.min(group + 5, to);
+            insertionSort(a, group, groupEnd);
+            swap(a, medians++, (group + groupEnd - 1) >>> 1);
+        }
+        return select(a, from, medians, (from + medians - 1) >>> 1, kernels);
+    }
+
+    /**
+     * Branch free partition: [from, lt) < pivot, [lt, to) geq pivot.
+     * Every value is swapped to the boundary, which only advances if the value is smaller.
+     * @return lt
+     */
+    private static int partitionLess(double[] a, int from, int to, double pivot) {
+        int lt = from;
+        for (int i = from; i < to; i++) {
+            double val = a[i];
+            a[i] = a[lt];
+            a[lt] = val;
+            lt += val < pivot ? 1 : 0;
+        }
+        return lt;
+    }
+
+    /**
+     * Branch free partition: [from, le) leq pivot, [le, to) > pivot
+     * @return le
+     */
+    private static int partitionNotGreater(double[] a, int from, int to, double pivot) {
+        int le = from;
+        for (int i = from; i < to; i++) {
+            double val = a[i];
+            a[i] = a[le];
+            a[le] = val;
+            le += val <= pivot ? 1 : 0;
+        }
+        return le;
+    }
+
+    private static double medianOf3(double a, double b, double c) {
+        if (a < b) {
+            if (b < c)
+                return b;
+            return a < c ? c : a;
+        }
+        if (a < c)
+            return a;
+        return b < c ? c : b;
+    }
+
+    private static void insertionSort(double[] a, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            double val = a[i];
+            int j = i - 1;
+            while (j >= from && a[j] > val) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = val;
+        }
+    }
+
+    private static void swap(double[] a, int i, int j) {
+        double tmp = a[i];
+        a[i] = a[j];
+        a[j] = tmp;
+    }
+}
@@ -0,0 +1,144 @@
+package de.laurenzgrote.rwth.kdtrees.data;
+
+import java.nio.IntBuffer;
+
+/**
+ * SnapshotTreeNode. Node of a tree restored from a snapshot, no split is computed again.
+ * The points of every node are a range of one permutation of the rows (leafs in DFS order).
+ * Values are either stored in the order of that permutation as well, or read from the input matrix by row.
+ * Permutation and values may live in a memory mapped file.
+ */
+public class SnapshotTreeNode implements TreeNode {
+
+    private final DataMatrix matrix;
+    // whether the rows of matrix are in the order of the permutation
+    private final boolean pointOrder;
+    // Permutation of the rows, in segments of Column.SEGMENT_SIZE
+    private final IntBuffer[] index;
+    // First position of the node in the permutation
+    private final int from;
+    private final NodeStatistics stats;
+
+    // Split into children, if any: points with a feature value leq splitValue are left
+    private int splitFeature = -1;
+    private double splitValue;
+    private int leafCount = 1;
+    private SnapshotTreeNode left, right;
+
+    /**
+     * Restores a node, as leaf
+     * @param matrix     Values of the points
+     * @param pointOrder true if the rows of matrix are in the order of the permutation, false if they are the input rows
+     * @param index      Permutation of the rows, in segments of Column.SEGMENT_SIZE
+     * @param from       First position of the node in the permutation
+     * @param stats      Statistics of the node, its length is the length of the node
+     */
+    public SnapshotTreeNode(DataMatrix matrix, boolean pointOrder, IntBuffer[] index, int from, NodeStatistics stats) {
+        this.matrix = matrix;
+        this.pointOrder = pointOrder;
+        this.index = index;
+        this.from = from;
+        this.stats = stats;
+    }
+
+    /**
+     * Restores the split of the node (used while loading)
+     * @param left    Left child, starting at the same position
+     * @param right   Right child, following the left one
+     * @param feature decisive feature
+     * @param value   Points with a value leq this are in the left child
+     */
+    public void setChildren(SnapshotTreeNode left, SnapshotTreeNode right, int feature, double value) {
+        if (left.from != from || right.from != from + left.getLength() || left.getLength() + right.getLength() != getLength())
+            throw new IllegalArgumentException("Children must partition the node");
+        this.left = left;
+        this.right = right;
+        this.splitFeature = feature;
+        this.splitValue = value;
+        this.leafCount = left.leafCount + right.leafCount;
+    }
+
+    @Override
+    public double getData(int point, int feature) {
+        return matrix.get(pointOrder ? from + point : getRow(point), feature);
+    }
+
+    @Override
+    public int getRow(int point) {
+        int position = from + point;
+        return index[position >>> Column.SEGMENT_SHIFT].get(position & (Column.SEGMENT_SIZE - 1));
+    }
+
+    @Override
+    public SnapshotTreeNode getLeft() {
+        return left;
+    }
+
+    @Override
+    public SnapshotTreeNode getRight() {
+        return right;
+    }
+
+    @Override
+    public int getDim() {
+        return matrix.getDim();
+    }
+
+    @Override
+    public int getLength() {
+        return stats.getLength();
+    }
+
+    @Override
+    public double getAvg(int feature) {
+        return stats.getAvg(feature);
+    }
+
+    @Override
+    public double getMean(int feature) {
+        double[] copy = new double[getLength()];
+        for (int point = 0; point < copy.length; point++)
+            copy[point] = getData(point, feature);
+        return Selection.select(copy, 0, copy.length, copy.length / 2);
+    }
+
+    @Override
+    public double getMinimum(int feature) {
+        return stats.getMinimum(feature);
+    }
+
+    @Override
+    public double getMaximum(int feature) {
+        return stats.getMaximum(feature);
+    }
+
+    @Override
+    public double getVariance(int feature) {
+        return stats.getVariance(feature);
+    }
+
+    @Override
+    public double getStddev(int feature) {
+        return Math.sqrt(getVariance(feature));
+    }
+
+    @Override
+    public NodeStatistics getStatistics() {
+        return stats;
+    }
+
+    @Override
+    public int getSplitFeature() {
+        return splitFeature;
+    }
+
+    @Override
+    public double getSplitValue() {
+        return splitValue;
+    }
+
+    @Override
+    public int getLeafCount() {
+        return leafCount;
+    }
+}
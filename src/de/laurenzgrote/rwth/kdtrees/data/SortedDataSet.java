@@ -4,11 +4,18 @@ import java.util.*;
 
 /**
  * DataSet. Immutable set of data points of the same dimension.
- * The List of Pointers is ordered by the nth dimension.
+ * For every feature there is a permutation of the rows ordered by that feature.
+ * Like the permutation of the DataSet, these are shared with the subsets:
+ * The set is the range [getFrom(), getTo()) of every one of them.
  */
 public class SortedDataSet extends DataSet{
     
-    private List<DataPoint>[] sortedSet;
+    // sortedSet[feature]: rows ordered by feature
+    private final int[][] sortedSet;
+    // Buffer for sorting and partitioning, shared among subsets
+    private final int[] buffer;
+    // Side marker for partitioning: set for rows going to the first subset
+    private final BitSet leftRows;
 
     /**
      * Initialises a set of Data Points (e.g. from input). Set can not be altered.
@@ -17,51 +24,141 @@ public class SortedDataSet extends DataSet{
      * @throws DataPointMalformatException if DataPoints are not sane
      */
     public SortedDataSet(List<DataPoint> set) throws DataPointMalformattedException {
-        super(set);
-        this.sortedSet = new ArrayList[getDim()];
-        this.sortedSet[0] = set; // Save to first position
+        this(new DataMatrix(set));
+    }
+
+    /**
+     * Initialises a set containing all rows of a matrix.
+     * Set is sorted against all features upon initialization!
+     * @param matrix Columns constituing the data set (unsorted)
+     */
+    public SortedDataSet(DataMatrix matrix) {
+        super(matrix);
+        this.sortedSet = new int[getDim()][];
+        this.buffer = new int[getLength()];
+        this.leftRows = new BitSet(getLength());
         sort(); // Sort and copy
     }
 
     /**
      * Creates a subset from the given set.
-     * Set: ds / remove
-     * The DataSet is assumed is assumed to be complete and sorted, thus a proteced method
+     * The range must have been created by partitionAt.
      * @param ds     Original Dataset
-     * @param remove Datapoints to be removed
+     * @param from   First position (inclusive) of the subset in the permutations
+     * @param to     Last position (exclusive) of the subset in the permutations
+     * @param stats  Statistics of the subset, collected while partitioning
      */
-    protected SortedDataSet (SortedDataSet ds, List<DataPoint> remove) {
-        super(ds, remove); // Initialize "normal" sets
-        this.sortedSet = new ArrayList[getDim()];
-        for (int i = 0; i < getDim(); i++) {
-            this.sortedSet[i] = new ArrayList<>(ds.sortedSet[i]); // Copy value
-            this.sortedSet[i].removeAll(remove); // Remove items to be removed
-        }
+    protected SortedDataSet (SortedDataSet ds, int from, int to, NodeStatistics stats) {
+        super(ds, from, to, stats); // Initialize "normal" sets
+        this.sortedSet = ds.sortedSet;
+        this.buffer = ds.buffer;
+        this.leftRows = ds.leftRows;
     }
 
     /** 
-    * Creates sorted lists for each feature.
-    * Result: The nth element of the list contains all the dps sorted
+    * Creates sorted permutations for each feature.
+    * Result: The nth permutation contains all the rows sorted
     * with respect to the nth feature
     */
     private void sort () {
         // Now we sort all the arrays
         for (int cDim = 0; cDim < getDim(); cDim++) {
-            // Comperator for the nth feature
-            DataPointComparator dPointComparator = new DataPointComparator(cDim);
             if (cDim > 0) { // first is already present
                 // Copy the data
-                sortedSet[cDim] = new ArrayList<>(sortedSet[cDim-1]); // Copy constructor
+                sortedSet[cDim] = sortedSet[cDim-1].clone();
+            } else {
+                sortedSet[cDim] = new int[getLength()];
+                for (int i = 0; i < getLength(); i++)
+                    sortedSet[cDim][i] = getRow(i);
+            }
+            // Sort by dim (stable, so ties keep the order of the last feature)
+            mergeSort(sortedSet[cDim], 0, getLength(), getMatrix().getColumn(cDim));
+        }
+    }
+
+    /**
+     * Stable merge sort of rows[from, to) by their values in column
+     */
+    private void mergeSort (int[] rows, int from, int to, Column column) {
+        if (to - from <= 32) {
+            // Insertion sort for short ranges
+            for (int i = from + 1; i < to; i++) {
+                int row = rows[i];
+                int j = i - 1;
+                while (j >= from && column.get(rows[j]) > column.get(row)) {
+                    rows[j + 1] = rows[j];
+                    j--;
+                }
+                rows[j + 1] = row;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(rows, from, mid, column);
+        mergeSort(rows, mid, to, column);
+        if (column.get(rows[mid - 1]) <= column.get(rows[mid]))
+            return; // already in order
+        System.arraycopy(rows, from, buffer, from, to - from);
+        int l = from, r = mid;
+        for (int i = from; i < to; i++) {
+            // On ties the left one first
+            if (r >= to || (l < mid && column.get(buffer[l]) <= column.get(buffer[r]))) {
+                rows[i] = buffer[l++];
+            } else {
+                rows[i] = buffer[r++];
+            }
+        }
+    }
+
+    /**
+     * Partitions the set at a position of the permutation of a feature:
+     * Rows up to the position go to the first subset, the others to the second.
+     * All permutations are partitioned stably, thus stay sorted, in O(n * dim).
+     * @param feature    Feature whose permutation is split
+     * @param position   Last position (relative to the set) belonging to the first subset
+     * @param leftStats  Empty statistics, filled with the first subset
+     * @param rightStats Empty statistics, filled with the second subset
+     * @return Position in the permutations where the second subset starts
+     */
+    protected int partitionAt (int feature, int position, NodeStatistics leftStats, NodeStatistics rightStats) {
+        int[] split = sortedSet[feature];
+        int mid = getFrom() + position + 1;
+        // Mark the side of every row
+        for (int i = getFrom(); i < mid; i++)
+            leftRows.set(split[i]);
+        // The split permutation is partitioned already
+        for (int cDim = 0; cDim < getDim(); cDim++)
+            if (cDim != feature)
+                stablePartition(sortedSet[cDim]);
+        partition(leftRows::get, leftStats, rightStats);
+        // Clean up for the other sets
+        for (int i = getFrom(); i < mid; i++)
+            leftRows.clear(split[i]);
+        return mid;
+    }
+
+    /**
+     * Moves the marked rows of the range to the front, keeping the order on both sides
+     */
+    private void stablePartition (int[] rows) {
+        int left = getFrom(); // next left position
+        int rightCnt = 0; // right rows in buffer
+        for (int i = getFrom(); i < getTo(); i++) {
+            int row = rows[i];
+            if (leftRows.get(row)) {
+                rows[left++] = row;
+            } else {
+                buffer[getFrom() + rightCnt++] = row;
             }
-            // Sort by dim
-            sortedSet[cDim].sort(dPointComparator); // Quicksort
         }
+        System.arraycopy(buffer, getFrom(), rows, left, rightCnt);
     }
 
     /**
-     * @return Lists with the dps ordered by the nth feature
+     * @return Permutations with the rows ordered by the nth feature.
+     * The set is the range getFrom() to getTo() of each of them.
      */
-    protected List<DataPoint>[] getSortedSet () {
+    protected int[][] getSortedSet () {
         return sortedSet;
     }
-}
\ No newline at end of file
+}
@@ -1,12 +1,13 @@
 package de.laurenzgrote.rwth.kdtrees.data;
 
-import java.util.*;
+import java.util.List;
 
 /**
- * SortedKDTreeNode. A node in a KD Tree, containing data points
+ * SortedKDTreeNode. A node in a KD Tree, containing data points.
+ * Sorted trees are always built sequentially, since all nodes share one side marker for partitioning.
  */
 public class SortedKDTreeNode extends SortedDataSet implements TreeNode {
-    private double tresh_maxdiff, tresh_variance;
+    private TreeParameters params;
     // Children containing the subsets
     private SortedKDTreeNode left, right;
 
@@ -16,22 +17,44 @@ public class SortedKDTreeNode extends SortedDataSet implements TreeNode {
      * @param tresh_variance Minimum variance for a median variance split
      */
     public SortedKDTreeNode (List<DataPoint> set, double tresh_maxdiff, double tresh_variance) throws DataPointMalformattedException {
+        this(set, new TreeParameters(tresh_maxdiff, tresh_variance));
+    }
+
+    /**
+     * Constructs KDTreeNode from List of DataPoints
+     * @param params Tresholds of the construction (pool is not used)
+     */
+    public SortedKDTreeNode (List<DataPoint> set, TreeParameters params) throws DataPointMalformattedException {
         super(set);
-        this.tresh_maxdiff = tresh_maxdiff;
-        this.tresh_variance = tresh_variance;
+        this.params = params;
         split(); // Split node, if possible
     }
 
     /**
-     * Constructs KDTreeNode as a subset of a given set
-     * (set / remove)
+     * Constructs KDTreeNode from all rows of a matrix
      * @param tresh_maxdiff Minimum difference for a maxdiff split
      * @param tresh_variance Minimum variance for a median variance split
      */
-    public SortedKDTreeNode (SortedDataSet set, List<DataPoint> remove, double tresh_maxdiff, double tresh_variance) {
-        super(set, remove);
-        this.tresh_maxdiff = tresh_maxdiff;
-        this.tresh_variance = tresh_variance;
+    public SortedKDTreeNode (DataMatrix matrix, double tresh_maxdiff, double tresh_variance) {
+        this(matrix, new TreeParameters(tresh_maxdiff, tresh_variance));
+    }
+
+    /**
+     * Constructs KDTreeNode from all rows of a matrix
+     * @param params Tresholds of the construction (pool is not used)
+     */
+    public SortedKDTreeNode (DataMatrix matrix, TreeParameters params) {
+        super(matrix);
+        this.params = params;
+        split(); // Split node, if possible
+    }
+
+    /**
+     * Constructs KDTreeNode from a partitioned range of the parent
+     */
+    private SortedKDTreeNode (SortedKDTreeNode parent, int from, int to, NodeStatistics stats) {
+        super(parent, from, to, stats);
+        this.params = parent.params;
         split(); // Split node, if possible
     }
 
@@ -43,23 +66,33 @@ public class SortedKDTreeNode extends SortedDataSet implements TreeNode {
         // if unsuccesful: Split by variance
         // Don't split if current cluster to small
         // Don't split if current cluster to small (Must be 2x Minsize)
-        if (getLength() > 2*minclustersize && !split_maxdiff())
-            split_variance();
+        NodeProbe probe = NodeProbe.start(params, getDepth(), getLength());
+        if (getLength() > 2*minclustersize) {
+            if (!split_maxdiff(probe))
+                split_variance(probe);
+        } else {
+            probe.finish(SplitType.LEAF);
+        }
     }
 
     /**
      * Splits the node among the maxdiff
      * @return whether maxdiff split was performed 
      */
-    private boolean split_maxdiff() {
+    private boolean split_maxdiff(NodeProbe probe) {
         double maxDiff = -1.0; // Maximum (so Far)
         int maxDiffFeature = -1; // in which feature
         int pivot = -1; // which element acts as pivot
+        // minclustersize outliers on each side, but never an empty side
+        int margin = Math.max(minclustersize, 1);
+        probe.begin();
         for (int feature = 0; feature < getDim(); feature++) { // for all features
-            List<DataPoint> sortedList = getSortedSet()[feature]; // DPs sorted by feature
-            for (int i = minclustersize; i < getLength() - minclustersize; i++) { // for all DPs except outliers
+            int[] sortedRows = getSortedSet()[feature]; // Rows sorted by feature
+            Column column = getMatrix().getColumn(feature);
+            int from = getFrom();
+            for (int i = minclustersize; i < getLength() - margin; i++) { // for all DPs except outliers
                 // Calculate diff
-                double diff = sortedList.get(i+1).getData(feature) - sortedList.get(i).getData(feature);
+                double diff = column.get(sortedRows[from + i + 1]) - column.get(sortedRows[from + i]);
                 if (diff > maxDiff) { // Compare if max
                     maxDiff = diff;
                     maxDiffFeature = feature;
@@ -67,11 +100,12 @@ public class SortedKDTreeNode extends SortedDataSet implements TreeNode {
                 }
             }
         }
+        probe.end(BuildPhase.MAXDIFF_SEARCH);
         // Can a split be performed
         // Criteria A: greater than tresh; Criteria B: clusters will be large enough
-        if (maxDiff > tresh_maxdiff) {
+        if (maxDiff > params.getTreshMaxdiff()) {
             // Yes --> Split by pivot
-            splitByPivot(maxDiffFeature, pivot);
+            splitByPivot(maxDiffFeature, pivot, SplitType.MAXDIFF, probe);
             return true;
         } else {
             return false;
@@ -81,14 +115,14 @@ public class SortedKDTreeNode extends SortedDataSet implements TreeNode {
     /** 
      * Splits the node among the median of the feature with max variance 
     */
-    private void split_variance() {
+    private void split_variance(NodeProbe probe) {
         // Search max variance
         double maxVariance = -1.0; // Placeholder val
         int maxVarianceFeature = -1;
         for (int feature = 0; feature < getDim(); feature++) { // For all feautres
             double variance = getVariance(feature); // calc variance
             // test if over tresh and and max
-            if (variance >= tresh_variance && variance > maxVariance) {
+            if (variance >= params.getTreshVariance() && variance > maxVariance) {
                 maxVariance = variance;
                 maxVarianceFeature = feature;
             }
@@ -97,26 +131,41 @@ public class SortedKDTreeNode extends SortedDataSet implements TreeNode {
         if (maxVarianceFeature >= 0) {
             // Found feature with sufficently high variance
             int mean = getLength() / 2; // Pivot
-            splitByPivot(maxVarianceFeature, mean);
+            splitByPivot(maxVarianceFeature, mean, SplitType.VARIANCE, probe);
+        } else {
+            // Found no splitting dimension. Node is left as is
+            probe.finish(SplitType.LEAF);
         }
-        // ELSE: Found no splitting dimension. Node is left as is
     }
 
     /**
      * Splits the node at pivot
      * @param feature decisive feature
      * @param pivot number of pivot element
+     * @param type kind of split, for the probe
+     * @param probe measurement of the node
      */
-    private void splitByPivot(int feature, int pivot) {
-        // Lists of ge and leq elements
-        // BE AWARE: FROM is inclusive, TO is exclusive
-        List<DataPoint> ge = getSortedSet()[feature].subList(pivot + 1, getLength());
-        List<DataPoint> leq = getSortedSet()[feature].subList(0, pivot + 1);
+    private void splitByPivot(int feature, int pivot, SplitType type, NodeProbe probe) {
+        // Rows up to the pivot are leq, the others ge
+        probe.begin();
+        NodeStatistics leqStats = new NodeStatistics(getDim());
+        NodeStatistics geStats = new NodeStatistics(getDim());
+        int mid = partitionAt(feature, pivot, leqStats, geStats);
+        probe.end(BuildPhase.PARTITION);
+        // Degenerated split (e.g. median of two points): Node is left as is
+        if (mid == getFrom() || mid == getTo()) {
+            probe.finish(SplitType.LEAF);
+            return;
+        }
+        probe.finish(type);
 
         // Left is leq pivot
-        left = new SortedKDTreeNode(this, ge, tresh_maxdiff, tresh_variance);
+        left = new SortedKDTreeNode(this, getFrom(), mid, leqStats);
         // Right is ge pivot
-        right = new SortedKDTreeNode(this, leq, tresh_maxdiff, tresh_variance);
+        right = new SortedKDTreeNode(this, mid, getTo(), geStats);
+        // Largest value of the left child
+        double value = getMatrix().get(getSortedSet()[feature][mid - 1], feature);
+        setSplit(feature, value, left.getLeafCount() + right.getLeafCount());
     }
 
     /**
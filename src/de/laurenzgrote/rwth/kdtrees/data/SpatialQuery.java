@@ -0,0 +1,223 @@
+package de.laurenzgrote.rwth.kdtrees.data;
+
+import java.util.Arrays;
+
+/**
+ * SpatialQuery. Nearest neighbour and range queries on a built tree.
+ * The minimum and maximum of every feature of a node form its bounding box,
+ * subtrees whose box is too far away from the query point are skipped.
+ * Queries only read the tree, so any number of them may run concurrently.
+ * Distances are euclidean.
+ */
+abstract class SpatialQuery {
+
+    /**
+     * @param root  Root of the tree
+     * @param point Query point
+     * @param k     Number of neighbours
+     * @return Rows of the (at most) k points nearest to point, nearest first
+     */
+    static int[] kNearest(TreeNode root, double[] point, int k) {
+        if (k < 0)
+            throw new IllegalArgumentException("k must not be negative");
+        Neighbours neighbours = new Neighbours(Math.min(k, root.getLength()));
+        if (neighbours.capacity > 0)
+            kNearest(root, point, neighbours);
+        return neighbours.sortedRows();
+    }
+
+    private static void kNearest(TreeNode node, double[] point, Neighbours neighbours) {
+        if (node.getLeft() == null) {
+            for (int p = 0; p < node.getLength(); p++)
+                neighbours.offer(distance2(node, p, point), node.getRow(p));
+            return;
+        }
+        // Nearer child first, so the other one is more likely to be pruned
+        TreeNode near = node.getLeft(), far = node.getRight();
+        double nearDist = boxDistance2(near, point), farDist = boxDistance2(far, point);
+        if (farDist < nearDist) {
+            TreeNode swap = near;
+            near = far;
+            far = swap;
+            double swapDist = nearDist;
+            nearDist = farDist;
+            farDist = swapDist;
+        }
+        if (!neighbours.isFull() || nearDist < neighbours.worst())
+            kNearest(near, point, neighbours);
+        if (!neighbours.isFull() || farDist < neighbours.worst())
+            kNearest(far, point, neighbours);
+    }
+
+    /**
+     * @param root   Root of the tree
+     * @param point  Query point
+     * @param radius Maximum distance (inclusive)
+     * @return Rows of all points within radius of point, in tree order
+     */
+    static int[] rangeQuery(TreeNode root, double[] point, double radius) {
+        Rows rows = new Rows();
+        rangeQuery(root, point, radius * radius, rows);
+        return Arrays.copyOf(rows.rows, rows.size);
+    }
+
+    private static void rangeQuery(TreeNode node, double[] point, double radius2, Rows rows) {
+        if (boxDistance2(node, point) > radius2)
+            return; // whole box outside
+        if (farthestCornerDistance2(node, point) <= radius2) {
+            // whole box inside
+            for (int p = 0; p < node.getLength(); p++)
+                rows.add(node.getRow(p));
+        } else if (node.getLeft() == null) {
+            for (int p = 0; p < node.getLength(); p++)
+                if (distance2(node, p, point) <= radius2)
+                    rows.add(node.getRow(p));
+        } else {
+            rangeQuery(node.getLeft(), point, radius2, rows);
+            rangeQuery(node.getRight(), point, radius2, rows);
+        }
+    }
+
+    /**
+     * @return Squared distance of the point of node to point
+     */
+    private static double distance2(TreeNode node, int p, double[] point) {
+        double sum = 0.0;
+        for (int feature = 0; feature < point.length; feature++) {
+            double diff = node.getData(p, feature) - point[feature];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    /**
+     * @return Squared distance of point to the nearest point of the bounding box of node
+     */
+    private static double boxDistance2(TreeNode node, double[] point) {
+        NodeStatistics stats = node.getStatistics();
+        double sum = 0.0;
+        for (int feature = 0; feature < point.length; feature++) {
+            double diff = Math.max(0.0, Math.max(stats.getMinimum(feature) - point[feature],
+                    point[feature] - stats.getMaximum(feature)));
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    /**
+     * @return Squared distance of point to the farthest corner of the bounding box of node
+     */
+    private static double farthestCornerDistance2(TreeNode node, double[] point) {
+        NodeStatistics stats = node.getStatistics();
+        double sum = 0.0;
+        for (int feature = 0; feature < point.length; feature++) {
+            double diff = Math.max(point[feature] - stats.getMinimum(feature),
+                    stats.getMaximum(feature) - point[feature]);
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    /**
+     * Bounded max heap of the nearest points found so far
+     */
+    private static class Neighbours {
+        private final int capacity;
+        private final double[] dist;
+        private final int[] rows;
+        private int size;
+
+        Neighbours(int capacity) {
+            this.capacity = capacity;
+            this.dist = new double[capacity];
+            this.rows = new int[capacity];
+        }
+
+        boolean isFull() {
+            return size == capacity;
+        }
+
+        double worst() {
+            return dist[0];
+        }
+
+        void offer(double d, int row) {
+            if (size < capacity) {
+                // sift up
+                int i = size++;
+                while (i > 0 && dist[(i - 1) / 2] < d) {
+                    dist[i] = dist[(i - 1) / 2];
+                    rows[i] = rows[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                dist[i] = d;
+                rows[i] = row;
+            } else if (d < dist[0]) {
+                // replace root, sift down
+                int i = 0;
+                while (true) {
+                    int c = 2 * i + 1;
+                    if (c >= size)
+                        break;
+                    if (c + 1 < size && dist[c + 1] > dist[c])
+                        c++;
+                    if (dist[c] <= d)
+                        break;
+                    dist[i] = dist[c];
+                    rows[i] = rows[c];
+                    i = c;
+                }
+                dist[i] = d;
+                rows[i] = row;
+            }
+        }
+
+        /**
+         * @return Rows ordered by distance, nearest first
+         */
+        int[] sortedRows() {
+            int[] result = new int[size];
+            // Pop the farthest until empty
+            for (int n = size; n > 0; n--) {
+                result[n - 1] = rows[0];
+                double d = dist[n - 1];
+                int row = rows[n - 1];
+                size = n - 1;
+                if (size > 0) {
+                    // Move the last element to the root and sift down
+                    dist[0] = Double.POSITIVE_INFINITY;
+                    int i = 0;
+                    while (true) {
+                        int c = 2 * i + 1;
+                        if (c >= size)
+                            break;
+                        if (c + 1 < size && dist[c + 1] > dist[c])
+                            c++;
+                        if (dist[c] <= d)
+                            break;
+                        dist[i] = dist[c];
+                        rows[i] = rows[c];
+                        i = c;
+                    }
+                    dist[i] = d;
+                    rows[i] = row;
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Growing list of rows
+     */
+    private static class Rows {
+        private int[] rows = new int[16];
+        private int size;
+
+        void add(int row) {
+            if (size == rows.length)
+                rows = Arrays.copyOf(rows, 2 * size);
+            rows[size++] = row;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package de.laurenzgrote.rwth.kdtrees.data;
+
+/**
+ * How a node was split during construction
+ */
+public enum SplitType {
+    // At the largest gap of a feature
+    MAXDIFF,
+    // At the median of the feature with maximum variance
+    VARIANCE,
+    // Not split: too small, no feature over the tresholds or degenerated split
+    LEAF
+}
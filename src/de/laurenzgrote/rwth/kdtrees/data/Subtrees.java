@@ -0,0 +1,64 @@
+package de.laurenzgrote.rwth.kdtrees.data;
+
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Subtrees. Builds the two children of a node, in parallel if the parameters say so.
+ * Children are disjoint ranges of the permutation, so they never touch the same data.
+ */
+abstract class Subtrees {
+
+    /**
+     * Runs both constructions. Returns after both are done,
+     * so the results are visible to the calling thread.
+     * @param params Parameters of the tree
+     * @param length Size of the node to be split
+     * @param left   Construction of the left child
+     * @param right  Construction of the right child
+     */
+    static void build(TreeParameters params, int length, Runnable left, Runnable right) {
+        if (params.getPool() == null || length < params.getParallelCutoff()) {
+            left.run();
+            right.run();
+            return;
+        }
+        RecursiveAction leftTask = task(left);
+        RecursiveAction rightTask = task(right);
+        if (ForkJoinTask.getPool() == params.getPool()) {
+            // Already a task of the pool (not the root)
+            ForkJoinTask.invokeAll(leftTask, rightTask);
+        } else {
+            params.getPool().invoke(task(() -> ForkJoinTask.invokeAll(leftTask, rightTask)));
+        }
+    }
+
+    /**
+     * Runs independent work on a single node (e.g. a chunk of the values of a feature per thread)
+     * in the pool of the parameters.
+     * Returns after all parts are done, so the results are visible to the calling thread.
+     * @param params Parameters of the tree, with a pool
+     * @param parts  Work to be done
+     */
+    static void runAll(TreeParameters params, Runnable[] parts) {
+        RecursiveAction[] tasks = new RecursiveAction[parts.length];
+        for (int i = 0; i < parts.length; i++)
+            tasks[i] = task(parts[i]);
+        if (ForkJoinTask.getPool() == params.getPool()) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            params.getPool().invoke(task(() -> ForkJoinTask.invokeAll(tasks)));
+        }
+    }
+
+    private static RecursiveAction task(Runnable construction) {
+        return new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                construction.run();
+            }
+        };
+    }
+}
@@ -0,0 +1,208 @@
+package de.laurenzgrote.rwth.kdtrees.data;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * SweepNode. Node of the trees of several threshold settings at once (see ThresholdSweep).
+ * A node is the same set of points for every setting reaching it, so its statistics,
+ * its largest gap and its median are found once. Settings then take one of three decisions:
+ * A maxdiff split (largest gap above tresh_maxdiff), a variance split (otherwise, if the largest
+ * variance reaches tresh_variance) or none. Each split is built once for all settings taking it.
+ * Decisions are those of MaxdiffKDTreeNode, so every setting gets the tree a construction of its own would.
+ */
+class SweepNode extends DataSet {
+
+    private final ThresholdSweep sweep;
+    // Largest gap, its borders and its feature, -1 if the node is too small for any split
+    private double gap = -1.0;
+    private double gapLower, gapUpper;
+    private int gapFeature = -1;
+    // Largest variance and the (first) feature of it, -1 if not searched
+    private double maxVariance = -1.0;
+    private int maxVarianceFeature = -1;
+    // Children of either split, null if no setting took it (or it degenerated)
+    private SweepNode maxdiffLeft, maxdiffRight, varianceLeft, varianceRight;
+    private double maxdiffValue, varianceValue;
+    // Rows of the node in their order, kept if the node is a leaf of some setting
+    private int[] rows;
+
+    /**
+     * Constructs the root of all settings
+     */
+    SweepNode(DataMatrix matrix, ThresholdSweep sweep, int[] settings) {
+        super(matrix);
+        this.sweep = sweep;
+        split(settings);
+    }
+
+    /**
+     * Constructs a node from a partitioned range of the parent
+     */
+    private SweepNode(SweepNode parent, int from, int to, NodeStatistics stats, int[] settings) {
+        super(parent, from, to, stats);
+        this.sweep = parent.sweep;
+        split(settings);
+    }
+
+    /**
+     * Splits the node for every setting reaching it
+     * @param settings Numbers of the settings
+     */
+    private void split(int[] settings) {
+        // Don't split if current cluster to small (Must be 2x Minsize)
+        if (getLength() <= 2 * minclustersize) {
+            rows = copyRows();
+            return;
+        }
+        searchMaxdiff();
+        int[] byMaxdiff = select(settings, setting -> gap > sweep.getTreshMaxdiff(setting));
+        int[] others = select(settings, setting -> !(gap > sweep.getTreshMaxdiff(setting)));
+        int[] byVariance = new int[0];
+        if (others.length > 0) {
+            searchVariance();
+            byVariance = select(others, setting -> maxVarianceFeature >= 0 && maxVariance >= sweep.getTreshVariance(setting));
+        }
+        boolean leaf = byMaxdiff.length + byVariance.length < settings.length;
+        // Order of the rows is needed again if the node is split twice or kept as leaf
+        int[] original = leaf || (byMaxdiff.length > 0 && byVariance.length > 0) ? copyRows() : null;
+        if (byMaxdiff.length > 0) {
+            maxdiffValue = MaxGap.pivot(gapLower, gapUpper);
+            SweepNode[] children = splitByPivot(gapFeature, maxdiffValue, byMaxdiff);
+            maxdiffLeft = children[0];
+            maxdiffRight = children[1];
+        }
+        if (byVariance.length > 0) {
+            if (byMaxdiff.length > 0)
+                restoreRows(original);
+            varianceValue = selectMean(maxVarianceFeature, sweep.getParameters().getMedianSelection());
+            SweepNode[] children = splitByPivot(maxVarianceFeature, varianceValue, byVariance);
+            varianceLeft = children[0];
+            varianceRight = children[1];
+        }
+        if (leaf || (byMaxdiff.length > 0 && maxdiffLeft == null) || (byVariance.length > 0 && varianceLeft == null))
+            rows = original != null ? original : copyRows();
+    }
+
+    /**
+     * Searches the largest gap of all features, the first feature wins among equal ones
+     */
+    private void searchMaxdiff() {
+        // minclustersize outliers on each side, but never an empty side
+        int margin = Math.max(minclustersize, 1);
+        MaxGap maxGap = new MaxGap(getLength()); // buckets for all features
+        for (int feature = 0; feature < getDim(); feature++) {
+            maxGap.search(copyValues(feature), getFrom(), getTo(), margin);
+            if (maxGap.getGap() > gap) {
+                gap = maxGap.getGap();
+                gapFeature = feature;
+                gapLower = maxGap.getLower();
+                gapUpper = maxGap.getUpper();
+            }
+        }
+    }
+
+    /**
+     * Searches the largest variance of all features, the first feature wins among equal ones
+     */
+    private void searchVariance() {
+        for (int feature = 0; feature < getDim(); feature++) {
+            double variance = getVariance(feature);
+            if (variance > maxVariance) {
+                maxVariance = variance;
+                maxVarianceFeature = feature;
+            }
+        }
+    }
+
+    /**
+     * Splits the node at pivot for some settings
+     * @return Both children, nulls if the split degenerated
+     */
+    private SweepNode[] splitByPivot(int feature, double value, int[] settings) {
+        NodeStatistics leftStats = new NodeStatistics(getDim());
+        NodeStatistics rightStats = new NodeStatistics(getDim());
+        int mid = partition(feature, value, leftStats, rightStats);
+        SweepNode[] children = new SweepNode[2];
+        // Degenerated split: Node is left as is
+        if (mid == getFrom() || mid == getTo())
+            return children;
+        // Both children may be built in parallel, they are disjoint ranges
+        Subtrees.build(sweep.getParameters(), getLength(),
+                () -> children[0] = new SweepNode(this, getFrom(), mid, leftStats, settings),
+                () -> children[1] = new SweepNode(this, mid, getTo(), rightStats, settings));
+        return children;
+    }
+
+    /**
+     * @return Settings satisfying the condition, in the same order
+     */
+    private static int[] select(int[] settings, IntPredicate condition) {
+        return Arrays.stream(settings).filter(condition).toArray();
+    }
+
+    /**
+     * @return Rows of the node in their current order
+     */
+    private int[] copyRows() {
+        int[] copy = new int[getLength()];
+        for (int point = 0; point < copy.length; point++)
+            copy[point] = getRow(point);
+        return copy;
+    }
+
+    /**
+     * Decision of a setting reaching this node
+     * @param treshMaxdiff  Minimum difference for a maxdiff split
+     * @param treshVariance Minimum variance for a median variance split
+     * @return Kind of split (LEAF if not split)
+     */
+    SplitType decide(double treshMaxdiff, double treshVariance) {
+        if (gapFeature >= 0 && gap > treshMaxdiff)
+            return maxdiffLeft != null ? SplitType.MAXDIFF : SplitType.LEAF;
+        if (maxVarianceFeature >= 0 && maxVariance >= treshVariance)
+            return varianceLeft != null ? SplitType.VARIANCE : SplitType.LEAF;
+        return SplitType.LEAF;
+    }
+
+    /**
+     * @return Child of a split, null if not built
+     */
+    SweepNode getChild(SplitType type, boolean left) {
+        if (type == SplitType.MAXDIFF)
+            return left ? maxdiffLeft : maxdiffRight;
+        return left ? varianceLeft : varianceRight;
+    }
+
+    /**
+     * @return Feature of a split
+     */
+    int getSplitFeature(SplitType type) {
+        return type == SplitType.MAXDIFF ? gapFeature : maxVarianceFeature;
+    }
+
+    /**
+     * @return Points with a value leq this are in the left child of a split
+     */
+    double getSplitValue(SplitType type) {
+        return type == SplitType.MAXDIFF ? maxdiffValue : varianceValue;
+    }
+
+    /**
+     * @return Rows of the node, if it is a leaf of some setting
+     */
+    int[] getRows() {
+        return rows;
+    }
+
+    /**
+     * @return Number of nodes of all settings together (this one included)
+     */
+    int getNodeCount() {
+        int count = 1;
+        for (SweepNode child : new SweepNode[] { maxdiffLeft, maxdiffRight, varianceLeft, varianceRight })
+            if (child != null)
+                count += child.getNodeCount();
+        return count;
+    }
+}
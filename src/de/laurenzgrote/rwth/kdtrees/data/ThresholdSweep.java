@@ -0,0 +1,259 @@
+package de.laurenzgrote.rwth.kdtrees.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ThresholdSweep. Trees of one input for several threshold settings, built together.
+ * Settings share every node they reach alike: Statistics, largest gap and median of a node are found once,
+ * a split is built once for all settings taking it (see SweepNode). So a grid of settings costs about
+ * as much as the distinct nodes of all its trees, not as much as the trees one by one.
+ * The tree of every setting is the one MaxdiffKDTreeNode would build.
+ * Sampling, listener and growth factor of the parameters are not used.
+ */
+public class ThresholdSweep {
+
+    private final double[] treshMaxdiff, treshVariance;
+    private final TreeParameters params;
+    private final SweepNode root;
+
+    /**
+     * Builds the trees of all settings
+     * @param matrix        Input
+     * @param treshMaxdiff  Minimum difference for a maxdiff split, per setting
+     * @param treshVariance Minimum variance for a median variance split, per setting
+     * @param params        Parallelism and median selection of the construction, its tresholds are not used
+     * @throws IllegalArgumentException if the settings differ in number
+     */
+    public ThresholdSweep(DataMatrix matrix, double[] treshMaxdiff, double[] treshVariance, TreeParameters params) {
+        if (treshMaxdiff.length != treshVariance.length)
+            throw new IllegalArgumentException("Every setting needs both tresholds");
+        this.treshMaxdiff = treshMaxdiff.clone();
+        this.treshVariance = treshVariance.clone();
+        this.params = params;
+        int[] settings = new int[treshMaxdiff.length];
+        for (int setting = 0; setting < settings.length; setting++)
+            settings[setting] = setting;
+        this.root = new SweepNode(matrix, this, settings);
+    }
+
+    /**
+     * Builds the trees of all pairs of tresholds, sequentially
+     * @param matrix        Input
+     * @param treshMaxdiff  Minimum differences for a maxdiff split
+     * @param treshVariance Minimum variances for a median variance split
+     * @return Sweep of treshMaxdiff.length * treshVariance.length settings, tresh_variance varying fastest
+     */
+    public static ThresholdSweep grid(DataMatrix matrix, double[] treshMaxdiff, double[] treshVariance) {
+        return grid(matrix, treshMaxdiff, treshVariance, new TreeParameters(0.0, 0.0));
+    }
+
+    /**
+     * Builds the trees of all pairs of tresholds
+     * @param matrix        Input
+     * @param treshMaxdiff  Minimum differences for a maxdiff split
+     * @param treshVariance Minimum variances for a median variance split
+     * @param params        Parallelism and median selection of the construction, its tresholds are not used
+     * @return Sweep of treshMaxdiff.length * treshVariance.length settings, tresh_variance varying fastest
+     */
+    public static ThresholdSweep grid(DataMatrix matrix, double[] treshMaxdiff, double[] treshVariance, TreeParameters params) {
+        int settings = treshMaxdiff.length * treshVariance.length;
+        double[] maxdiff = new double[settings];
+        double[] variance = new double[settings];
+        for (int i = 0; i < settings; i++) {
+            maxdiff[i] = treshMaxdiff[i / treshVariance.length];
+            variance[i] = treshVariance[i % treshVariance.length];
+        }
+        return new ThresholdSweep(matrix, maxdiff, variance, params);
+    }
+
+    /**
+     * @return Number of settings
+     */
+    public int getSettingCount() {
+        return treshMaxdiff.length;
+    }
+
+    /**
+     * @return Minimum difference for a maxdiff split of a setting
+     */
+    public double getTreshMaxdiff(int setting) {
+        return treshMaxdiff[setting];
+    }
+
+    /**
+     * @return Minimum variance for a median variance split of a setting
+     */
+    public double getTreshVariance(int setting) {
+        return treshVariance[setting];
+    }
+
+    /**
+     * @return Parameters of the construction
+     */
+    TreeParameters getParameters() {
+        return params;
+    }
+
+    /**
+     * @return Number of distinct nodes built for all settings together
+     */
+    public int getNodeCount() {
+        return root.getNodeCount();
+    }
+
+    /**
+     * @param setting Number of the setting
+     * @return Tree of the setting, its nodes may be shared with the trees of other settings
+     */
+    public TreeNode getTree(int setting) {
+        return new SweepTree(root, treshMaxdiff[setting], treshVariance[setting]);
+    }
+
+    /**
+     * @param tree Root node
+     * @return Number of points of every cluster, in DFS order
+     */
+    public static int[] getClusterSizes(TreeNode tree) {
+        List<TreeNode> leafs = new ArrayList<>();
+        collectLeafs(tree, leafs);
+        int[] sizes = new int[leafs.size()];
+        for (int i = 0; i < sizes.length; i++)
+            sizes[i] = leafs.get(i).getLength();
+        return sizes;
+    }
+
+    /**
+     * Sum of squared errors: Squared distances of all points to the average of their cluster.
+     * Taken from the statistics of the leafs, no point is read.
+     * @param tree Root node
+     * @return SSE of the clustering
+     */
+    public static double getSquaredError(TreeNode tree) {
+        List<TreeNode> leafs = new ArrayList<>();
+        collectLeafs(tree, leafs);
+        double sse = 0.0;
+        for (TreeNode leaf : leafs)
+            for (int feature = 0; feature < leaf.getDim(); feature++)
+                sse += leaf.getStatistics().getSquaredDeviation(feature);
+        return sse;
+    }
+
+    private static void collectLeafs(TreeNode node, List<TreeNode> leafs) {
+        if (node.getLeft() == null) {
+            leafs.add(node);
+        } else {
+            collectLeafs(node.getLeft(), leafs);
+            collectLeafs(node.getRight(), leafs);
+        }
+    }
+
+    /**
+     * Tree of one setting: The nodes reached by its decisions
+     */
+    private static final class SweepTree implements TreeNode {
+        private final SweepNode node;
+        private final SplitType split;
+        private final SweepTree left, right;
+        private final int leafCount;
+
+        SweepTree(SweepNode node, double treshMaxdiff, double treshVariance) {
+            this.node = node;
+            this.split = node.decide(treshMaxdiff, treshVariance);
+            if (split == SplitType.LEAF) {
+                left = right = null;
+                leafCount = 1;
+            } else {
+                left = new SweepTree(node.getChild(split, true), treshMaxdiff, treshVariance);
+                right = new SweepTree(node.getChild(split, false), treshMaxdiff, treshVariance);
+                leafCount = left.leafCount + right.leafCount;
+            }
+        }
+
+        @Override
+        public double getData(int point, int feature) {
+            return node.getMatrix().get(getRow(point), feature);
+        }
+
+        @Override
+        public int getRow(int point) {
+            if (left == null)
+                return node.getRows()[point];
+            int leftLength = left.getLength();
+            return point < leftLength ? left.getRow(point) : right.getRow(point - leftLength);
+        }
+
+        @Override
+        public TreeNode getLeft() {
+            return left;
+        }
+
+        @Override
+        public TreeNode getRight() {
+            return right;
+        }
+
+        @Override
+        public int getDim() {
+            return node.getDim();
+        }
+
+        @Override
+        public int getLength() {
+            return node.getLength();
+        }
+
+        @Override
+        public double getAvg(int feature) {
+            return node.getAvg(feature);
+        }
+
+        @Override
+        public double getMean(int feature) {
+            double[] copy = new double[getLength()];
+            for (int point = 0; point < copy.length; point++)
+                copy[point] = getData(point, feature);
+            return Selection.select(copy, 0, copy.length, copy.length / 2);
+        }
+
+        @Override
+        public double getMinimum(int feature) {
+            return node.getMinimum(feature);
+        }
+
+        @Override
+        public double getMaximum(int feature) {
+            return node.getMaximum(feature);
+        }
+
+        @Override
+        public double getVariance(int feature) {
+            return node.getVariance(feature);
+        }
+
+        @Override
+        public double getStddev(int feature) {
+            return node.getStddev(feature);
+        }
+
+        @Override
+        public NodeStatistics getStatistics() {
+            return node.getStatistics();
+        }
+
+        @Override
+        public int getSplitFeature() {
+            return left == null ? -1 : node.getSplitFeature(split);
+        }
+
+        @Override
+        public double getSplitValue() {
+            return node.getSplitValue(split);
+        }
+
+        @Override
+        public int getLeafCount() {
+            return leafCount;
+        }
+    }
+}
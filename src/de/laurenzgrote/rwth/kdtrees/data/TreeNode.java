@@ -1,16 +1,16 @@
 package de.laurenzgrote.rwth.kdtrees.data;
 
-import java.util.Set;
-
 /**
  * TreeNode. Interface of an binary tree containing clusters.
  * Leafs are the final clusters of the root node.
  * So the sum of the childs are the nodes own data,
  * no element is shared between the child nodes.
+ * Clusters are numbered by DFS, left child first (as in the ClusterWriter).
  */
 public interface TreeNode {
-    // List with all Data Points in Node
-    Set<DataPoint> getSet();
+    // Data Points in Node, numbered from 0 to getLength()-1
+    double getData(int point, int feature);
+    int getRow(int point);
     // Children of current node
     TreeNode getLeft();
     TreeNode getRight();
@@ -24,4 +24,66 @@ public interface TreeNode {
     double getMaximum (int feature);
     double getVariance (int feature);
     double getStddev (int feature);
+    NodeStatistics getStatistics();
+
+    // Split of an inner node: points with a value leq getSplitValue() are in the left child
+    int getSplitFeature();
+    double getSplitValue();
+    int getLeafCount();
+
+    /**
+     * Routes a point from this node down to a leaf in O(depth).
+     * Points equal to a split value go left, like the points of the input did.
+     * (Exception: Sorted trees may have put equal values on both sides of a median split.)
+     * @param point Values of all features
+     * @return Number of the leaf's cluster (counted from this node)
+     */
+    default int classify(double[] point) {
+        TreeNode node = this;
+        int cluster = 0;
+        while (node.getLeft() != null) {
+            if (point[node.getSplitFeature()] <= node.getSplitValue()) {
+                node = node.getLeft();
+            } else {
+                // Skip the clusters of the left child
+                cluster += node.getLeft().getLeafCount();
+                node = node.getRight();
+            }
+        }
+        return cluster;
+    }
+
+    /**
+     * Classifies several points without allocating memory
+     * @param points points[i] are the values of the ith point
+     * @param out    out[i] is set to the cluster of the ith point
+     */
+    default void classifyBatch(double[][] points, int[] out) {
+        if (out.length < points.length)
+            throw new IllegalArgumentException("Output must have room for all points");
+        for (int i = 0; i < points.length; i++)
+            out[i] = classify(points[i]);
+    }
+
+    /**
+     * Nearest neighbour search, subtrees are pruned by their bounding boxes.
+     * May be called by several threads at once.
+     * @param point Query point
+     * @param k     Number of neighbours
+     * @return Rows of the (at most) k points of the node nearest to point, nearest first
+     */
+    default int[] kNearest(double[] point, int k) {
+        return SpatialQuery.kNearest(this, point, k);
+    }
+
+    /**
+     * Range search, subtrees are pruned by their bounding boxes.
+     * May be called by several threads at once.
+     * @param point  Query point
+     * @param radius Maximum euclidean distance (inclusive)
+     * @return Rows of all points of the node within radius of point
+     */
+    default int[] rangeQuery(double[] point, double radius) {
+        return SpatialQuery.rangeQuery(this, point, radius);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,198 @@
+package de.laurenzgrote.rwth.kdtrees.data;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * TreeParameters. Settings of a tree construction, shared by all nodes of the tree.
+ * Settings must not be altered while a tree is built.
+ */
+public class TreeParameters {
+    // Nodes smaller than this are not worth a task of their own
+    public static final int DEFAULT_PARALLEL_CUTOFF = 10000;
+    // Nodes larger than this search the features in parallel
+    public static final int DEFAULT_PARALLEL_SPLIT_CUTOFF = 100000;
+    public static final double DEFAULT_GROWTH_FACTOR = 2.0;
+    // Fraction of the points a quantile of a split sample may be off by
+    public static final double SAMPLING_RANK_ERROR = 0.01;
+
+    private final double tresh_maxdiff, tresh_variance;
+
+    // null: sequential construction
+    private ForkJoinPool pool;
+    private int parallelCutoff = DEFAULT_PARALLEL_CUTOFF;
+    private int parallelSplitCutoff = DEFAULT_PARALLEL_SPLIT_CUTOFF;
+
+    private MedianSelection medianSelection = MedianSelection.INTROSELECT;
+
+    // Leafs are split again once grown by this factor through insertion
+    private double growthFactor = DEFAULT_GROWTH_FACTOR;
+
+    // null: construction is not measured
+    private BuildListener listener;
+
+    // Nodes larger than this choose their split from a sample, 0: never
+    private int samplingThreshold;
+    private int sampleSize;
+
+    /**
+     * Parameters for a sequential construction
+     * @param tresh_maxdiff  Minimum difference for a maxdiff split
+     * @param tresh_variance Minimum variance for a median variance split
+     */
+    public TreeParameters(double tresh_maxdiff, double tresh_variance) {
+        this.tresh_maxdiff = tresh_maxdiff;
+        this.tresh_variance = tresh_variance;
+    }
+
+    /**
+     * Enables parallel construction: Sibling subtrees are built as separate tasks.
+     * Nodes with less than parallelCutoff points are built sequentially.
+     * The resulting tree is identical to the sequentially built one.
+     * @param pool           Pool to run the tasks in
+     * @param parallelCutoff Minimum node size for forking the children
+     * @return this
+     */
+    public TreeParameters setParallel(ForkJoinPool pool, int parallelCutoff) {
+        this.pool = pool;
+        this.parallelCutoff = parallelCutoff;
+        return this;
+    }
+
+    /**
+     * Sets from which size on a node of a parallel construction searches its maxdiff split
+     * with all threads of the pool, each scanning a chunk of the values of a feature.
+     * This helps the top of the tree, where there are not yet enough subtrees to keep all threads busy.
+     * Its buckets need 16 bytes per point, as those of a sequential search, however many threads there are.
+     * The split is the one of a sequential search.
+     * @param parallelSplitCutoff Minimum node size for searching the split in parallel
+     * @return this
+     */
+    public TreeParameters setParallelSplitCutoff(int parallelSplitCutoff) {
+        this.parallelSplitCutoff = parallelSplitCutoff;
+        return this;
+    }
+
+    /**
+     * Sets the algorithm for finding the median of a variance split
+     * @param medianSelection Sorting or linear time selection
+     * @return this
+     */
+    public TreeParameters setMedianSelection(MedianSelection medianSelection) {
+        this.medianSelection = medianSelection;
+        return this;
+    }
+
+    /**
+     * Sets when a leaf is split again after points were inserted:
+     * Once it holds growthFactor times the points it was constructed with.
+     * @param growthFactor Factor greater than 1, infinity to never split again
+     * @return this
+     */
+    public TreeParameters setGrowthFactor(double growthFactor) {
+        if (!(growthFactor > 1.0))
+            throw new IllegalArgumentException("Growth factor must be greater than 1");
+        this.growthFactor = growthFactor;
+        return this;
+    }
+
+    /**
+     * Reports every node of the construction to the listener
+     * @param listener Listener, null to measure nothing
+     * @return this
+     */
+    public TreeParameters setListener(BuildListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Lets nodes with more than threshold points choose their split from a stratified sample
+     * instead of all their points. The pivot is verified during partitioning: A maxdiff split is
+     * only kept if the gap holds for all points, a median which is off is logged.
+     * The sample is large enough that, with the given confidence, every quantile of the sample
+     * is within SAMPLING_RANK_ERROR of the exact one (Dvoretzky-Kiefer-Wolfowitz inequality
+     * with Massart's constant: https://doi.org/10.1214/aop/1176990746).
+     * Resulting trees may differ from the exact ones.
+     * @param threshold  Minimum node size for sampling, 0 to never sample
+     * @param confidence Probability between 0 and 1 (exclusive), higher means larger samples
+     * @return this
+     */
+    public TreeParameters setSampling(int threshold, double confidence) {
+        if (!(confidence > 0.0 && confidence < 1.0))
+            throw new IllegalArgumentException("Confidence must be between 0 and 1");
+        this.samplingThreshold = threshold;
+        this.sampleSize = (int) Math.ceil(Math.log(2.0 / (1.0 - confidence))
+                / (2.0 * SAMPLING_RANK_ERROR * SAMPLING_RANK_ERROR));
+        return this;
+    }
+
+    /**
+     * @return Minimum difference for a maxdiff split
+     */
+    public double getTreshMaxdiff() {
+        return tresh_maxdiff;
+    }
+
+    /**
+     * @return Minimum variance for a median variance split
+     */
+    public double getTreshVariance() {
+        return tresh_variance;
+    }
+
+    /**
+     * @return Pool for parallel construction, null if sequential
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @return Minimum node size for building the children in parallel
+     */
+    public int getParallelCutoff() {
+        return parallelCutoff;
+    }
+
+    /**
+     * @return Minimum node size for searching the split in parallel
+     */
+    public int getParallelSplitCutoff() {
+        return parallelSplitCutoff;
+    }
+
+    /**
+     * @return Algorithm for finding the median of a variance split
+     */
+    public MedianSelection getMedianSelection() {
+        return medianSelection;
+    }
+
+    /**
+     * @return Factor by which a leaf grows before it is split again
+     */
+    public double getGrowthFactor() {
+        return growthFactor;
+    }
+
+    /**
+     * @return Listener receiving every node, null if none
+     */
+    public BuildListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @return Minimum node size for choosing the split from a sample, 0 if never
+     */
+    public int getSamplingThreshold() {
+        return samplingThreshold;
+    }
+
+    /**
+     * @return Number of points sampled (0 if never sampled)
+     */
+    public int getSampleSize() {
+        return sampleSize;
+    }
+}
@@ -0,0 +1,178 @@
+package de.laurenzgrote.rwth.kdtrees.generator;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+import de.laurenzgrote.rwth.kdtrees.io.LabelWriter;
+import de.laurenzgrote.rwth.kdtrees.io.MatrixWriter;
+
+/**
+ * DatasetGenerator. Generates normalized datasets row by row, for load tests.
+ * Rows are streamed to a MatrixWriter, so datasets of any size can be written.
+ * The same seed always yields the same dataset.
+ * Values are rounded to a fixed number of decimals, so dense and binary outputs hold the same values.
+ */
+public class DatasetGenerator {
+
+    /**
+     * Shapes of the generated data
+     */
+    public enum Distribution {
+        /** Gaussian blobs around random centers (label: blob), plus optional uniform noise (label: -1) */
+        BLOBS,
+        /** Uniform in the unit cube (label: -1) */
+        UNIFORM,
+        /** Few distinct points, each repeated many times (label: distinct point) */
+        DUPLICATES,
+        /** Uniform, but rows ascending in the first feature (label: -1) */
+        SORTED
+    }
+
+    private final Distribution distribution;
+    private final int rows, dim;
+    private final long seed;
+
+    private int clusters = 8;
+    private double stddev = 0.02;
+    private double noise = 0.0;
+    private int decimals = 6;
+
+    /**
+     * @param distribution Shape of the data
+     * @param rows         Number of rows
+     * @param dim          Dimension of the rows
+     * @param seed         Seed of the random numbers
+     */
+    public DatasetGenerator(Distribution distribution, int rows, int dim, long seed) {
+        if (rows < 0 || dim < 1)
+            throw new IllegalArgumentException("Need a positive dimension and no negative row count");
+        this.distribution = distribution;
+        this.rows = rows;
+        this.dim = dim;
+        this.seed = seed;
+    }
+
+    /**
+     * @param clusters Number of blobs, or of distinct points for duplicates
+     * @return this
+     */
+    public DatasetGenerator setClusters(int clusters) {
+        if (clusters < 1)
+            throw new IllegalArgumentException("Need at least one cluster");
+        this.clusters = clusters;
+        return this;
+    }
+
+    /**
+     * @param stddev Standard deviation of the blobs
+     * @return this
+     */
+    public DatasetGenerator setStddev(double stddev) {
+        this.stddev = stddev;
+        return this;
+    }
+
+    /**
+     * @param noise Fraction of uniform rows among the blobs
+     * @return this
+     */
+    public DatasetGenerator setNoise(double noise) {
+        if (noise < 0.0 || noise > 1.0)
+            throw new IllegalArgumentException("Noise must be a fraction");
+        this.noise = noise;
+        return this;
+    }
+
+    /**
+     * @param decimals Decimals values are rounded to (at most 9)
+     * @return this
+     */
+    public DatasetGenerator setDecimals(int decimals) {
+        if (decimals < 1 || decimals > 9)
+            throw new IllegalArgumentException("Decimals must be between 1 and 9");
+        this.decimals = decimals;
+        return this;
+    }
+
+    /**
+     * @return Number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return Dimension of the rows
+     */
+    public int getDim() {
+        return dim;
+    }
+
+    /**
+     * Generates all rows. The writers are not closed.
+     * @param out    Writer for the rows, announced with getRows() rows of getDim() columns
+     * @param labels Writer for the ground truth of every row, null if not needed
+     * @throws IOException IO Errors are not dealt with
+     */
+    public void generate(MatrixWriter out, LabelWriter labels) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        double scale = Math.pow(10, decimals);
+        // Centers of blobs or duplicates
+        double[][] centers = new double[clusters][dim];
+        for (double[] center : centers)
+            for (int feature = 0; feature < dim; feature++)
+                center[feature] = distribution == Distribution.BLOBS ? 0.1 + 0.8 * random.nextDouble() : random.nextDouble();
+        double[] row = new double[dim];
+        for (int i = 0; i < rows; i++) {
+            int label = -1;
+            switch (distribution) {
+                case BLOBS:
+                    if (random.nextDouble() < noise) {
+                        uniform(random, row);
+                    } else {
+                        label = random.nextInt(clusters);
+                        for (int feature = 0; feature < dim; feature++)
+                            row[feature] = centers[label][feature] + stddev * gaussian(random);
+                    }
+                    break;
+                case UNIFORM:
+                    uniform(random, row);
+                    break;
+                case DUPLICATES:
+                    label = random.nextInt(clusters);
+                    System.arraycopy(centers[label], 0, row, 0, dim);
+                    break;
+                case SORTED:
+                    uniform(random, row);
+                    // One uniform value per stratum of the first feature: ascending, but still uniform
+                    row[0] = (i + row[0]) / rows;
+                    break;
+            }
+            for (int feature = 0; feature < dim; feature++) {
+                double value = Math.round(row[feature] * scale) / scale;
+                row[feature] = Math.min(1.0, Math.max(0.0, value)); // normalized
+            }
+            out.writeRow(row);
+            if (labels != null)
+                labels.write(label);
+        }
+    }
+
+    private static void uniform(SplittableRandom random, double[] row) {
+        for (int feature = 0; feature < row.length; feature++)
+            row[feature] = random.nextDouble();
+    }
+
+    /**
+     * Standard normal value (Marsaglia's polar method, one of the pair is dropped)
+     */
+    private static double gaussian(SplittableRandom random) {
+        double u, v, s;
+        do {
+            u = 2.0 * random.nextDouble() - 1.0;
+            v = 2.0 * random.nextDouble() - 1.0;
+            s = u * u + v * v;
+        } while (s >= 1.0 || s == 0.0);
+        return u * Math.sqrt(-2.0 * Math.log(s) / s);
+    }
+}
@@ -0,0 +1,162 @@
+package de.laurenzgrote.rwth.kdtrees.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * ByteOutput. Encodes numbers into a reused direct buffer, which is flushed to a file once full.
+ * No Strings are created for numbers, except for doubles which have no short decimal form.
+ */
+class ByteOutput implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Most digits written after the decimal point by the fast path
+    private static final int MAX_FRACTION_DIGITS = 9;
+    // Values up to this magnitude times 10^9 are exact longs
+    private static final double MAX_FAST_VALUE = 1e6;
+    // Double.toString writes smaller values in scientific notation
+    private static final double MIN_FAST_VALUE = 1e-3;
+
+    private static final long[] POWERS_OF_TEN = new long[MAX_FRACTION_DIGITS + 1];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    // Digits of a number, in reverse order
+    private final byte[] digits = new byte[20];
+
+    /**
+     * Opens a file for writing, appending to what is in it
+     * @param path File to write to
+     * @throws IOException IO Errors are not dealt with
+     */
+    ByteOutput(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Makes sure there is room for the given number of bytes
+     */
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes)
+            flush();
+    }
+
+    void put(char c) throws IOException {
+        ensure(1);
+        buffer.put((byte) c);
+    }
+
+    void put(String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+        for (byte b : bytes) {
+            ensure(1);
+            buffer.put(b);
+        }
+    }
+
+    /**
+     * Writes an int as 4 little endian bytes
+     */
+    void putBinary(int i) throws IOException {
+        ensure(Integer.BYTES);
+        buffer.putInt(i);
+    }
+
+    /**
+     * Writes a long as 8 little endian bytes
+     */
+    void putBinary(long l) throws IOException {
+        ensure(Long.BYTES);
+        buffer.putLong(l);
+    }
+
+    /**
+     * Writes a double as 8 little endian bytes
+     */
+    void putBinary(double d) throws IOException {
+        ensure(Double.BYTES);
+        buffer.putDouble(d);
+    }
+
+    /**
+     * Writes an int in decimal
+     */
+    void put(int i) throws IOException {
+        putDigits(i, 0);
+    }
+
+    /**
+     * Writes a long in decimal, padded with leading zeros to at least minDigits digits
+     */
+    private void putDigits(long l, int minDigits) throws IOException {
+        ensure(digits.length + 1);
+        if (l < 0) {
+            buffer.put((byte) '-');
+            l = -l;
+        }
+        int cnt = 0;
+        do {
+            digits[cnt++] = (byte) ('0' + l % 10);
+            l /= 10;
+        } while (l != 0);
+        while (cnt < minDigits)
+            digits[cnt++] = '0';
+        while (cnt > 0)
+            buffer.put(digits[--cnt]);
+    }
+
+    /**
+     * Writes a double in decimal, with the fewest fraction digits that parse back to the same value.
+     * Values needing more than 9 fraction digits and values below 10^-3 are written by Double.toString,
+     * so the output is the same as with Double.toString.
+     */
+    void put(double d) throws IOException {
+        double abs = Math.abs(d);
+        if (abs >= MIN_FAST_VALUE && abs < MAX_FAST_VALUE) {
+            for (int fraction = 1; fraction <= MAX_FRACTION_DIGITS; fraction++) {
+                long scaled = Math.round(abs * POWERS_OF_TEN[fraction]);
+                // Both are exact, so the division is the correctly rounded value of the decimal
+                if ((double) scaled / POWERS_OF_TEN[fraction] == abs) {
+                    if (d < 0 || (d == 0 && 1 / d < 0))
+                        put('-');
+                    putDigits(scaled / POWERS_OF_TEN[fraction], 0);
+                    put('.');
+                    putDigits(scaled % POWERS_OF_TEN[fraction], fraction);
+                    return;
+                }
+            }
+        }
+        put(Double.toString(d));
+    }
+
+    /**
+     * Writes the buffer to the file
+     */
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package de.laurenzgrote.rwth.kdtrees.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ChunkedDenseMatrixReader. Parses a CLUTO dense matrix with several threads.
+ * The body of the file is cut into byte ranges at line starts. First the lines of
+ * every range are counted, which yields the row each range starts with.
+ * Then every range is parsed by its own DenseMatrixReader, straight into
+ * the preallocated columns at its row offset.
+ */
+class ChunkedDenseMatrixReader {
+
+    // Ranges per thread, so threads finishing early can help out
+    private static final int CHUNKS_PER_THREAD = 4;
+    // Ranges smaller than this are not worth a task
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+
+    private final Path path;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param path File to read from
+     * @param pool Pool the ranges are parsed in
+     */
+    ChunkedDenseMatrixReader(Path path, ForkJoinPool pool) {
+        this.path = path;
+        this.pool = pool;
+    }
+
+    /**
+     * Reads the whole matrix
+     * @return columns[column][row]
+     * @throws IOException IO Errors are not dealt with within the Reader
+     * @throws FileMalformattedException Error if file does not meat specified syntax
+     */
+    double[][] read() throws IOException, FileMalformattedException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int row_cnt, column_cnt;
+            long bodyStart;
+            try (DenseMatrixReader header = new DenseMatrixReader(path, channel, 0, size)) {
+                int[] params = header.readHeader();
+                row_cnt = params[0];
+                column_cnt = params[1];
+                bodyStart = header.getPosition();
+            }
+            long[] bounds = chunkBounds(channel, bodyStart, size);
+            int chunks = bounds.length - 1;
+
+            // Count lines of every range
+            int[] lines = new int[chunks];
+            runAll(chunks, chunk -> {
+                try (DenseMatrixReader reader = new DenseMatrixReader(path, channel, bounds[chunk], bounds[chunk + 1])) {
+                    lines[chunk] = reader.countLines();
+                }
+            });
+            // First row of every range
+            int[] firstRow = new int[chunks + 1];
+            for (int chunk = 0; chunk < chunks; chunk++)
+                firstRow[chunk + 1] = (int) Math.min(row_cnt, (long) firstRow[chunk] + lines[chunk]);
+            if (firstRow[chunks] < row_cnt) // too many lines are ignored, since there is often an empty line
+                throw new FileMalformattedException(path, "First line must contain n+1 lines");
+
+            // Parse every range into its rows
+            double[][] columns = new double[column_cnt][row_cnt];
+            runAll(chunks, chunk -> {
+                try (DenseMatrixReader reader = new DenseMatrixReader(path, channel, bounds[chunk], bounds[chunk + 1])) {
+                    for (int i = firstRow[chunk]; i < firstRow[chunk + 1]; i++)
+                        reader.readRow(columns, i, i);
+                }
+            });
+            return columns;
+        }
+    }
+
+    /**
+     * Cuts [bodyStart, size) into ranges starting at line starts
+     * @return Offsets of the ranges, the last one is size
+     */
+    private long[] chunkBounds(FileChannel channel, long bodyStart, long size) throws IOException {
+        int chunks = (int) Math.max(1, Math.min((long) pool.getParallelism() * CHUNKS_PER_THREAD,
+                (size - bodyStart) / MIN_CHUNK_SIZE));
+        long[] bounds = new long[chunks + 1];
+        bounds[0] = bodyStart;
+        bounds[chunks] = size;
+        for (int chunk = 1; chunk < chunks; chunk++) {
+            long nominal = bodyStart + (size - bodyStart) * chunk / chunks;
+            bounds[chunk] = Math.max(bounds[chunk - 1], nextLineStart(channel, nominal, size));
+        }
+        return bounds;
+    }
+
+    /**
+     * @return Offset of the first line start after offset (size if there is none)
+     */
+    private static long nextLineStart(FileChannel channel, long offset, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        long position = offset;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            for (int i = 0; i < read; i++)
+                if (buffer.get(i) == '\n')
+                    return position + i + 1;
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Work on a single range, may fail like the reader itself
+     */
+    private interface ChunkWork {
+        void run(int chunk) throws IOException, FileMalformattedException;
+    }
+
+    /**
+     * Runs the work for all ranges in the pool.
+     * If ranges fail, the error of the first of them is thrown,
+     * so the same row is reported as by a sequential read.
+     */
+    private void runAll(int chunks, ChunkWork work) throws IOException, FileMalformattedException {
+        Exception[] errors = new Exception[chunks];
+        List<RecursiveAction> tasks = new ArrayList<>(chunks);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int current = chunk;
+            tasks.add(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    try {
+                        work.run(current);
+                    } catch (IOException | FileMalformattedException e) {
+                        errors[current] = e;
+                    }
+                }
+            });
+        }
+        pool.invoke(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+        });
+        for (Exception e : errors) {
+            if (e instanceof IOException)
+                throw (IOException) e;
+            if (e instanceof FileMalformattedException)
+                throw (FileMalformattedException) e;
+        }
+    }
+}
@@ -4,19 +4,52 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
-import de.laurenzgrote.rwth.kdtrees.data.DataPoint;
 import de.laurenzgrote.rwth.kdtrees.data.TreeNode;
 
 /**
- * ClusterWriter. Writes clustering data to various output formats
+ * ClusterWriter. Writes clustering data to various output formats.
+ * Clusters are the leafs of the tree, numbered in DFS order.
+ * Points are encoded straight into a reused buffer, so the output is never held in memory.
  */
 public abstract class ClusterWriter {
 
+    /**
+     * Supported output formats
+     */
+    public enum Format {
+        /** Gnuplot profile followed by "x y cluster" lines, 2D data only */
+        GNUPLOT,
+        /** Header line, then "row,x0,...,x(d-1),cluster" lines */
+        CSV,
+        /** Cluster of every input row as 32 bit little endian int, in row order */
+        LABELS
+    }
+
+    /**
+     * Writes clustering data in the given format
+     * 
+     * @param tNode  Root node
+     * @param path   Output path
+     * @param format Output format
+     * @throws FileMalformattedException if data can't be written in the format
+     */
+    public static void write(TreeNode tNode, Path path, Format format) throws FileMalformattedException {
+        switch (format) {
+            case GNUPLOT:
+                writeToGnuplot(tNode, path);
+                break;
+            case CSV:
+                writeToCsv(tNode, path);
+                break;
+            case LABELS:
+                writeLabels(tNode, path);
+                break;
+        }
+    }
+
     /**
      * Writes clustering data to gnuplot compatible data
      * 
@@ -29,57 +62,123 @@ public abstract class ClusterWriter {
         if (tNode.getDim() != 2)
             throw new FileMalformattedException(path, "Can't write Dataset as dim not equal 2");
 
-        StringBuilder outString = new StringBuilder(); // Output buffer
-
         // First we make an ArrayList of just the leaf nodes
         // since these contain the clusters
-        // We get them by DFS using recursion
         List<TreeNode> leafs = getLeafs(tNode);
         System.out.println("Cluster count: " + leafs.size());
 
-        // Now we do the output
-        for (int i = 0; i < leafs.size(); i++) {
-            // FOR every leaf
-            Set<DataPoint> leaf = leafs.get(i).getSet();
-            for (DataPoint dPoint : leaf) {
-                outString.append(dPoint); // toString() of dPoint
-                outString.append(i); // Clustering info
-                outString.append('\n');
-            }
-        }
-
-        // File I/O (Writing with New IO)
         try {
-        // if present, overwrite
-            if (Files.exists(path))
-                Files.delete(path);
+            // if present, overwrite
+            Files.deleteIfExists(path);
             // Copy profile for gnuplot
             if (leafs.size() > 64) {
                 Files.copy(Paths.get("profile_large.gp"), path);
             } else {
                 Files.copy(Paths.get("profile.gp"), path);
             }
-            Files.write(path, outString.toString().getBytes(), StandardOpenOption.APPEND);
-            
+            // Now we do the output, appended to the profile
+            try (ByteOutput out = new ByteOutput(path)) {
+                for (int i = 0; i < leafs.size(); i++) {
+                    TreeNode leaf = leafs.get(i);
+                    for (int point = 0; point < leaf.getLength(); point++) {
+                        for (int feature = 0; feature < leaf.getDim(); feature++) {
+                            out.put(leaf.getData(point, feature));
+                            out.put(' ');
+                        }
+                        out.put(i); // Clustering info
+                        out.put('\n');
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Couldn't write to File: " + path.toAbsolutePath());
+        }
+    }
+
+    /**
+     * Writes clustering data as CSV, works for any dimension
+     * 
+     * @param tNode Root node
+     * @param path  Output path
+     * @throws FileMalformattedException
+     */
+    public static void writeToCsv(TreeNode tNode, Path path) throws FileMalformattedException {
+        List<TreeNode> leafs = getLeafs(tNode);
+        System.out.println("Cluster count: " + leafs.size());
+
+        try {
+            Files.deleteIfExists(path);
+            try (ByteOutput out = new ByteOutput(path)) {
+                out.put("row");
+                for (int feature = 0; feature < tNode.getDim(); feature++) {
+                    out.put(",x");
+                    out.put(feature);
+                }
+                out.put(",cluster\n");
+                for (int i = 0; i < leafs.size(); i++) {
+                    TreeNode leaf = leafs.get(i);
+                    for (int point = 0; point < leaf.getLength(); point++) {
+                        out.put(leaf.getRow(point));
+                        for (int feature = 0; feature < leaf.getDim(); feature++) {
+                            out.put(',');
+                            out.put(leaf.getData(point, feature));
+                        }
+                        out.put(',');
+                        out.put(i);
+                        out.put('\n');
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Couldn't write to File: " + path.toAbsolutePath());
+        }
+    }
+
+    /**
+     * Writes the cluster of every input row as binary labels, works for any dimension
+     * 
+     * @param tNode Root node
+     * @param path  Output path
+     * @throws FileMalformattedException
+     */
+    public static void writeLabels(TreeNode tNode, Path path) throws FileMalformattedException {
+        List<TreeNode> leafs = getLeafs(tNode);
+        System.out.println("Cluster count: " + leafs.size());
+
+        // Leafs are in DFS order, labels in row order
+        int[] labels = new int[tNode.getLength()];
+        for (int i = 0; i < leafs.size(); i++) {
+            TreeNode leaf = leafs.get(i);
+            for (int point = 0; point < leaf.getLength(); point++)
+                labels[leaf.getRow(point)] = i;
+        }
+
+        try (LabelWriter out = new LabelWriter(path)) {
+            for (int label : labels)
+                out.write(label);
         } catch (IOException e) {
             System.err.println("Couldn't write to File: " + path.toAbsolutePath());
         }
-        // Since Java new I/O is new, fresh and hipster, I do not need to close file
     }
 
     /**
      * DFS which extracts leaf nodes from binary tree
      */
     private static List<TreeNode> getLeafs(TreeNode tNode) {
-        // Assumption: Tree is either leaf or has two children
         List<TreeNode> leafs = new ArrayList<>();
+        collectLeafs(tNode, leafs);
+        return leafs;
+    }
+
+    private static void collectLeafs(TreeNode tNode, List<TreeNode> leafs) {
+        // Assumption: Tree is either leaf or has two children
         if (tNode.getLeft() == null && tNode.getRight() == null) {
             // Leaf node
             leafs.add(tNode);
         } else if (tNode.getLeft() != null && tNode.getRight() != null) {
             // Two children
-            leafs.addAll(getLeafs(tNode.getLeft()));
-            leafs.addAll(getLeafs(tNode.getRight()));
+            collectLeafs(tNode.getLeft(), leafs);
+            collectLeafs(tNode.getRight(), leafs);
         } else {
             // One child
             System.err.println("Unspecified condition: TreeNode with one child");
@@ -88,6 +187,5 @@ public abstract class ClusterWriter {
             // Still better than an NPE :D
             System.exit(-1);
         }
-        return leafs;
     }
-}
\ No newline at end of file
+}
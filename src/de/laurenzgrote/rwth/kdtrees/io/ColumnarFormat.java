@@ -0,0 +1,170 @@
+package de.laurenzgrote.rwth.kdtrees.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import de.laurenzgrote.rwth.kdtrees.data.Column;
+import de.laurenzgrote.rwth.kdtrees.data.DataMatrix;
+
+/**
+ * ColumnarFormat. Binary file format of a dense matrix, stored column after column.
+ * All numbers are little endian. Header of 32 bytes:
+ *  0: magic "KDCM"
+ *  4: int32 version (1)
+ *  8: int32 bytes per value (8: double, 4: float)
+ * 12: int32 column count
+ * 16: int64 row count
+ * 24: 8 bytes reserved (0)
+ * Then every column as row count values, so a column can be mapped as is.
+ */
+public abstract class ColumnarFormat {
+
+    static final int MAGIC = 0x4D43444B; // "KDCM" little endian
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+
+    /**
+     * @param path File to check
+     * @return whether the file starts like a columnar matrix file
+     * @throws IOException IO Errors are not dealt with
+     */
+    public static boolean isColumnar(Path path) throws IOException {
+        return readMagic(path) == MAGIC;
+    }
+
+    /**
+     * @return first 4 bytes of the file as little endian int, 0 if the file is shorter
+     */
+    static int readMagic(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (magic.hasRemaining() && channel.read(magic) >= 0);
+            return magic.hasRemaining() ? 0 : magic.getInt(0);
+        }
+    }
+
+    /**
+     * Maps a columnar matrix file. The values are not copied onto the heap,
+     * the columns read straight from the mapped file.
+     * 
+     * @param path File to read from
+     * @return Matrix as specified in File
+     * @throws IOException IO Errors are not dealt with within the Reader
+     * @throws FileMalformattedException Error if file is no columnar matrix file
+     */
+    public static DataMatrix map(Path path) throws FileMalformattedException, IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0);
+            if (header.hasRemaining() || header.getInt(0) != MAGIC)
+                throw new FileMalformattedException(path, "Not a columnar matrix file");
+            if (header.getInt(4) != VERSION)
+                throw new FileMalformattedException(path, "Unsupported version " + header.getInt(4));
+            int valueSize = header.getInt(8);
+            int column_cnt = header.getInt(12);
+            long row_cnt = header.getLong(16);
+            if ((valueSize != Double.BYTES && valueSize != Float.BYTES) || column_cnt < 1
+                    || row_cnt < 0 || row_cnt > Integer.MAX_VALUE)
+                throw new FileMalformattedException(path, "Header must contain value size, columns and rows");
+            if (channel.size() < HEADER_SIZE + column_cnt * row_cnt * valueSize)
+                throw new FileMalformattedException(path, "File is truncated");
+
+            Column[] columns = mapColumns(channel, HEADER_SIZE, column_cnt, (int) row_cnt, valueSize);
+            try {
+                return new DataMatrix(columns);
+            } catch (IllegalArgumentException e) {
+                throw new FileMalformattedException(path, e.getMessage());
+            }
+            // Mappings stay valid after the channel is closed
+        }
+    }
+
+    /**
+     * Maps columns stored one after another
+     * @param channel    Open channel of the file
+     * @param start      Offset of the first column
+     * @param column_cnt Number of columns
+     * @param rows       Values per column
+     * @param valueSize  8 for doubles, 4 for floats
+     * @return Columns reading from the mapped file
+     */
+    static Column[] mapColumns(FileChannel channel, long start, int column_cnt, int rows, int valueSize) throws IOException {
+        Column[] columns = new Column[column_cnt];
+        for (int column = 0; column < column_cnt; column++) {
+            ByteBuffer[] segments = mapSegments(channel, start + (long) column * rows * valueSize, rows, valueSize);
+            if (valueSize == Double.BYTES) {
+                DoubleBuffer[] values = new DoubleBuffer[segments.length];
+                for (int segment = 0; segment < segments.length; segment++)
+                    values[segment] = segments[segment].asDoubleBuffer();
+                columns[column] = Column.of(values, rows);
+            } else {
+                FloatBuffer[] values = new FloatBuffer[segments.length];
+                for (int segment = 0; segment < segments.length; segment++)
+                    values[segment] = segments[segment].asFloatBuffer();
+                columns[column] = Column.of(values, rows);
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Maps an array stored in the file, in segments of Column.SEGMENT_SIZE values
+     * (a single buffer cannot exceed 2 GB)
+     * @param channel   Open channel of the file
+     * @param start     Offset of the first value
+     * @param count     Number of values
+     * @param valueSize Bytes per value
+     * @return little endian buffers, at least one
+     */
+    static ByteBuffer[] mapSegments(FileChannel channel, long start, int count, int valueSize) throws IOException {
+        int segment_cnt = Math.max(1, (count + Column.SEGMENT_SIZE - 1) / Column.SEGMENT_SIZE);
+        ByteBuffer[] segments = new ByteBuffer[segment_cnt];
+        for (int segment = 0; segment < segment_cnt; segment++) {
+            long first = (long) segment * Column.SEGMENT_SIZE;
+            long length = Math.min(Column.SEGMENT_SIZE, count - first);
+            segments[segment] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    start + first * valueSize, length * valueSize).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return segments;
+    }
+
+    /**
+     * Converts a CLUTO dense matrix to a columnar matrix file.
+     * Rows are streamed from one file to the other, so the matrix is never held in memory.
+     * 
+     * @param in      Dense matrix to read from
+     * @param out     Columnar file to write to (overwritten)
+     * @param asFloat whether values are stored as float instead of double
+     * @throws IOException IO Errors are not dealt with
+     * @throws FileMalformattedException Error if in does not meat the dense matrix syntax
+     */
+    public static void convertDenseMatrix(Path in, Path out, boolean asFloat) throws FileMalformattedException, IOException {
+        try (DenseMatrixReader reader = new DenseMatrixReader(in)) {
+            int[] params = reader.readHeader();
+            int row_cnt = params[0], column_cnt = params[1];
+            // Checked before any row, as when the matrix is read into memory
+            if (reader.countLines() < row_cnt)
+                throw new FileMalformattedException(in, "First line must contain n+1 lines");
+            double[][] columns = new double[column_cnt][1];
+            double[] row = new double[column_cnt];
+            try (ColumnarWriter writer = new ColumnarWriter(out, row_cnt, column_cnt, asFloat)) {
+                for (int i = 0; i < row_cnt; i++) {
+                    reader.readRow(columns, 0, i);
+                    for (int column = 0; column < column_cnt; column++)
+                        row[column] = columns[column][0];
+                    writer.writeRow(row);
+                }
+            } catch (FileMalformattedException e) {
+                Files.deleteIfExists(out);
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package de.laurenzgrote.rwth.kdtrees.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * ColumnarWriter. Writes a columnar matrix file (see ColumnarFormat) row by row.
+ * Every column has a small buffer, which is written to the column's place in the file
+ * once it is full. So rows can be streamed without holding the matrix in memory.
+ */
+public class ColumnarWriter implements MatrixWriter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final long row_cnt;
+    private final int valueSize;
+    private final boolean asFloat;
+    private final ByteBuffer[] buffers;
+    // Rows written to the buffers so far, and rows already in the file
+    private long rows, flushedRows;
+
+    /**
+     * Creates (or overwrites) a file and writes the header
+     * @param path       File to write to
+     * @param row_cnt    Number of rows which will be written
+     * @param column_cnt Number of columns
+     * @param asFloat    whether values are stored as float instead of double
+     * @throws IOException IO Errors are not dealt with
+     */
+    public ColumnarWriter(Path path, long row_cnt, int column_cnt, boolean asFloat) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.row_cnt = row_cnt;
+        this.asFloat = asFloat;
+        this.valueSize = asFloat ? Float.BYTES : Double.BYTES;
+        this.buffers = new ByteBuffer[column_cnt];
+        for (int column = 0; column < column_cnt; column++)
+            buffers[column] = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer header = ByteBuffer.allocate(ColumnarFormat.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(ColumnarFormat.MAGIC);
+        header.putInt(ColumnarFormat.VERSION);
+        header.putInt(valueSize);
+        header.putInt(column_cnt);
+        header.putLong(row_cnt);
+        header.putLong(0L);
+        header.flip();
+        writeFully(header, 0);
+    }
+
+    @Override
+    public void writeRow(double[] values) throws IOException {
+        if (rows == row_cnt)
+            throw new IllegalStateException("All " + row_cnt + " rows were written already");
+        if (!buffers[0].hasRemaining())
+            flush();
+        for (int column = 0; column < buffers.length; column++) {
+            if (asFloat) {
+                buffers[column].putFloat((float) values[column]);
+            } else {
+                buffers[column].putDouble(values[column]);
+            }
+        }
+        rows++;
+    }
+
+    /**
+     * Writes the buffered values of every column to its place in the file
+     */
+    private void flush() throws IOException {
+        for (int column = 0; column < buffers.length; column++) {
+            ByteBuffer buffer = buffers[column];
+            buffer.flip();
+            long offset = ColumnarFormat.HEADER_SIZE + (column * row_cnt + flushedRows) * valueSize;
+            writeFully(buffer, offset);
+            buffer.clear();
+        }
+        flushedRows = rows;
+    }
+
+    private void writeFully(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining())
+            offset += channel.write(buffer, offset);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+        if (rows != row_cnt)
+            throw new IllegalStateException("Only " + rows + " of " + row_cnt + " rows were written");
+    }
+}
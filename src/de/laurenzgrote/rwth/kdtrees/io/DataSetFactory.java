@@ -1,11 +1,13 @@
 package de.laurenzgrote.rwth.kdtrees.io;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
+import de.laurenzgrote.rwth.kdtrees.data.Column;
+import de.laurenzgrote.rwth.kdtrees.data.DataMatrix;
 import de.laurenzgrote.rwth.kdtrees.data.DataPoint;
 import de.laurenzgrote.rwth.kdtrees.data.DataPointMalformattedException;
 
@@ -25,40 +27,61 @@ public abstract class DataSetFactory {
      * @throws FileMalformattedException Error if file does not meat specified syntax
      */
     public static List<DataPoint> readFromDenseMatrix(Path path) throws FileMalformattedException, IOException {
-        int row_cnt, column_cnt;
-        List<String> rows = Files.readAllLines(path); // UTF-8 is assumed
-        try {
-            String[] params = rows.get(0).split(" ");
-            row_cnt = Integer.parseInt(params[0]);
-            column_cnt = Integer.parseInt(params[1]);
-        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
-            throw new FileMalformattedException(path, "First line must be two integers (rows, columns)");
-        }
-        if (rows.size() < row_cnt + 1) // too many lines are ignored, since there is often an empty line
-            throw new FileMalformattedException(path, "First line must contain n+1 lines");
-        // ACTUAL READING STARTS HERE
-        List<DataPoint> dSet = new ArrayList<>(row_cnt);
-        for (int i = 0; i < row_cnt; i++) {
-            // We read all the rows
-            // let i be the row, then i lays in the i+1th line
-            // We know that there are enough lines (checked beforehand)
-            String[] line = rows.get(i + 1).split(" ");
-            if (line.length != column_cnt)
-                throw new FileMalformattedException(path, "Row " + i + " has wrong dimension");
+        DataMatrix matrix = readMatrixFromDenseMatrix(path);
+        List<DataPoint> dSet = new ArrayList<>(matrix.getLength());
+        for (int i = 0; i < matrix.getLength(); i++) {
+            double[] vector = new double[matrix.getDim()];
+            for (int j = 0; j < matrix.getDim(); j++)
+                vector[j] = matrix.get(i, j);
             try {
-                double[] vector = new double[line.length];
-                for (int j = 0; j < column_cnt; j++) {
-                    // throws NFE
-                    vector[j] = Double.parseDouble(line[j]);
-                }
-                DataPoint dPoint = new DataPoint(vector); // throws DPME
-                dSet.add(dPoint);
-            } catch (NumberFormatException e) {
-                throw new FileMalformattedException(path, "Row " + i + " contains non floating number values");
+                dSet.add(new DataPoint(vector));
             } catch (DataPointMalformattedException e) {
+                // Checked by the reader already
                 throw new FileMalformattedException(path, "Row " + i + ": " + e.getMessage());
             }
         }
         return dSet;
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads a dense matrix from a file into columns. Syntax as in CLUTO dense matrix.
+     * 1st line: row_count column_count
+     * then space (or tab) seperated vector values
+     * The file is memory mapped and parsed without creating any objects per value.
+     * 
+     * @param path File to read from
+     * @return Matrix as specified in File
+     * @throws IOException IO Errors are not dealt with within the Reader
+     * @throws FileMalformattedException Error if file does not meat specified syntax
+     */
+    public static DataMatrix readMatrixFromDenseMatrix(Path path) throws FileMalformattedException, IOException {
+        try (DenseMatrixReader reader = new DenseMatrixReader(path)) {
+            return wrap(reader.read());
+        }
+    }
+
+    /**
+     * Reads a dense matrix from a file into columns with several threads.
+     * Syntax and errors as in readMatrixFromDenseMatrix, the file is parsed in
+     * ranges of lines which are written straight to their rows of the columns.
+     * 
+     * @param path File to read from
+     * @param pool Pool the parsing is done in
+     * @return Matrix as specified in File
+     * @throws IOException IO Errors are not dealt with within the Reader
+     * @throws FileMalformattedException Error if file does not meat specified syntax
+     */
+    public static DataMatrix readMatrixFromDenseMatrix(Path path, ForkJoinPool pool) throws FileMalformattedException, IOException {
+        return wrap(new ChunkedDenseMatrixReader(path, pool).read());
+    }
+
+    /**
+     * Wraps parsed columns without checking them again, the readers reject rows not normalized
+     */
+    private static DataMatrix wrap(double[][] values) {
+        Column[] columns = new Column[values.length];
+        for (int column = 0; column < values.length; column++)
+            columns[column] = Column.of(values[column]);
+        return DataMatrix.ofTrusted(columns);
+    }
+}
@@ -0,0 +1,355 @@
+package de.laurenzgrote.rwth.kdtrees.io;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * DenseMatrixReader. Parses a CLUTO dense matrix straight from a memory mapped file
+ * into one primitive array per column, no Strings are created on the way.
+ * Values are separated by any amount of spaces or tabs.
+ * Files are mapped in windows of up to 1 GB, so files of any size are supported.
+ * A reader may also be restricted to a byte range of the file, which must start and end at line starts.
+ */
+class DenseMatrixReader implements AutoCloseable {
+
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    // 10^0 to 10^22 are exact doubles
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    // whether the channel is closed by this reader
+    private final boolean ownsChannel;
+    // Byte range [rangeStart, rangeEnd) to be read
+    private final long rangeStart, rangeEnd;
+
+    // Current window of the file
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int limit;
+    private boolean lastWindow;
+    // Position of the next unread byte within the window
+    private int pos;
+
+    // Results of parseDouble
+    private double value;
+    private boolean notANumber;
+
+    /**
+     * Opens a file for reading
+     * @param path File to read from
+     * @throws IOException IO Errors are not dealt with within the Reader
+     */
+    DenseMatrixReader(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.ownsChannel = true;
+        this.rangeStart = 0;
+        this.rangeEnd = channel.size();
+        map(rangeStart);
+    }
+
+    /**
+     * Reader of a part of a file
+     * @param path    File to read from (for error messages)
+     * @param channel Open channel of the file, it is not closed by the reader
+     * @param from    First byte (inclusive) to be read, must be a line start
+     * @param to      Last byte (exclusive) to be read, must be a line start or the end of file
+     * @throws IOException IO Errors are not dealt with within the Reader
+     */
+    DenseMatrixReader(Path path, FileChannel channel, long from, long to) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.ownsChannel = false;
+        this.rangeStart = from;
+        this.rangeEnd = to;
+        map(rangeStart);
+    }
+
+    /**
+     * Reads the whole matrix
+     * @return columns[column][row]
+     * @throws IOException IO Errors are not dealt with within the Reader
+     * @throws FileMalformattedException Error if file does not meat specified syntax
+     */
+    double[][] read() throws IOException, FileMalformattedException {
+        int[] params = readHeader();
+        int row_cnt = params[0], column_cnt = params[1];
+        // Checked before any row, so a short file is reported as such even if a row is malformatted too
+        if (countLines() < row_cnt) // too many lines are ignored, since there is often an empty line
+            throw new FileMalformattedException(path, "First line must contain n+1 lines");
+        double[][] columns = new double[column_cnt][row_cnt];
+        for (int i = 0; i < row_cnt; i++) // let i be the row, then i lays in the i+1th line
+            readRow(columns, i, i);
+        return columns;
+    }
+
+    /**
+     * Reads the first line: row_count column_count
+     * @return row count and column count
+     */
+    int[] readHeader() throws IOException, FileMalformattedException {
+        int start = pos;
+        while (true) {
+            if (pos == limit) {
+                if (lastWindow || start == 0)
+                    break;
+                remap(start);
+                start = 0;
+            }
+            if (window.get(pos) == '\n')
+                break;
+            pos++;
+        }
+        String line = ascii(start, pos);
+        if (pos < limit)
+            pos++; // newline
+        try {
+            String[] params = line.trim().split("\\s+");
+            int row_cnt = Integer.parseInt(params[0]);
+            int column_cnt = Integer.parseInt(params[1]);
+            if (row_cnt < 0 || column_cnt < 1)
+                throw new NumberFormatException();
+            return new int[] { row_cnt, column_cnt };
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new FileMalformattedException(path, "First line must be two integers (rows, columns)");
+        }
+    }
+
+    /**
+     * @return File offset of the next unread byte
+     */
+    long getPosition() {
+        return windowStart + pos;
+    }
+
+    /**
+     * Counts the lines from the current position to the end of the range.
+     * The position is not changed.
+     * @return number of lines (a last line without newline included)
+     */
+    int countLines() throws IOException {
+        long start = getPosition();
+        int lines = 0;
+        boolean lineStarted = false;
+        while (true) {
+            for (int p = pos; p < limit; p++) {
+                lineStarted = true;
+                if (window.get(p) == '\n') {
+                    lines++;
+                    lineStarted = false;
+                }
+            }
+            if (lastWindow)
+                break;
+            map(windowStart + limit);
+        }
+        if (lineStarted)
+            lines++;
+        map(start);
+        return lines;
+    }
+
+    /**
+     * Reads the next line into columns[...][row]
+     * @param columns   columns to write to
+     * @param row       row to write to
+     * @param reportRow row number used in error messages
+     */
+    void readRow(double[][] columns, int row, int reportRow) throws IOException, FileMalformattedException {
+        int start = pos;
+        while (!tryReadRow(columns, row, reportRow)) {
+            // Row exceeds the window
+            if (start == 0)
+                throw new FileMalformattedException(path, "Row " + reportRow + " is too long");
+            remap(start);
+            start = pos;
+        }
+    }
+
+    /**
+     * Reads the next line, if it ends within the current window
+     * @return false if the end of the window was reached first (nothing is consumed then)
+     */
+    private boolean tryReadRow(double[][] columns, int row, int reportRow) throws FileMalformattedException {
+        int p = pos;
+        int column = 0;
+        boolean malformatted = false, normalized = true;
+        while (true) {
+            // Skip blanks
+            byte b = 0;
+            while (p < limit && isBlank(b = window.get(p)))
+                p++;
+            if (p == limit) {
+                if (!lastWindow)
+                    return false;
+                break; // last line without newline
+            }
+            if (b == '\n') {
+                p++;
+                break;
+            }
+            // Value
+            p = parseDouble(p);
+            if (p == limit && !lastWindow)
+                return false;
+            if (column < columns.length) {
+                malformatted |= notANumber;
+                normalized &= !(value < 0.0 || value > 1.0);
+                columns[column][row] = value;
+            }
+            column++;
+        }
+        pos = p;
+        // Same precedence of errors as always: dimension, number format, normalization
+        if (column != columns.length)
+            throw new FileMalformattedException(path, "Row " + reportRow + " has wrong dimension");
+        if (malformatted)
+            throw new FileMalformattedException(path, "Row " + reportRow + " contains non floating number values");
+        if (!normalized)
+            throw new FileMalformattedException(path, "Row " + reportRow + ": Data point not normalized");
+        return true;
+    }
+
+    /**
+     * Parses the value starting at window[start] into the field value.
+     * Plain decimals with up to 18 digits and small exponents are computed directly,
+     * which is exact since both mantissa and power of ten are exact doubles
+     * (Clinger's fast path: https://doi.org/10.1145/93548.93557).
+     * Everything else is left to Double.parseDouble.
+     * @return Position after the value
+     */
+    private int parseDouble(int start) {
+        notANumber = false;
+        int p = start;
+        boolean negative = false;
+        byte b = window.get(p);
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            p++;
+        }
+        long mantissa = 0;
+        int digits = 0; // significant digits in mantissa
+        int exponent = 0;
+        boolean anyDigit = false;
+        // Integer part
+        while (p < limit && (b = window.get(p)) >= '0' && b <= '9') {
+            mantissa = mantissa * 10 + (b - '0');
+            if (mantissa != 0)
+                digits++;
+            anyDigit = true;
+            p++;
+        }
+        // Fraction
+        if (p < limit && b == '.') {
+            p++;
+            while (p < limit && (b = window.get(p)) >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                if (mantissa != 0)
+                    digits++;
+                exponent--;
+                anyDigit = true;
+                p++;
+            }
+        }
+        // Exponent
+        if (anyDigit && p < limit && (b == 'e' || b == 'E')) {
+            p++;
+            boolean negativeExp = false;
+            if (p < limit && ((b = window.get(p)) == '-' || b == '+')) {
+                negativeExp = b == '-';
+                p++;
+            }
+            int exp = 0;
+            boolean anyExpDigit = false;
+            while (p < limit && (b = window.get(p)) >= '0' && b <= '9' && exp < 10000) {
+                exp = exp * 10 + (b - '0');
+                anyExpDigit = true;
+                p++;
+            }
+            if (!anyExpDigit)
+                anyDigit = false; // fall back
+            exponent += negativeExp ? -exp : exp;
+        }
+        if (p < limit && !isDelimiter(window.get(p))) {
+            // Something else follows, the value ends at the next delimiter
+            while (p < limit && !isDelimiter(window.get(p)))
+                p++;
+            anyDigit = false; // fall back
+        }
+        if (!anyDigit || digits > 18 || mantissa > (1L << 53) || exponent < -22 || exponent > 22) {
+            value = parseSlow(start, p);
+        } else {
+            double val = (double) mantissa;
+            val = exponent >= 0 ? val * POWERS_OF_TEN[exponent] : val / POWERS_OF_TEN[-exponent];
+            value = negative ? -val : val;
+        }
+        return p;
+    }
+
+    /**
+     * Parses window[start, end) with Double.parseDouble
+     */
+    private double parseSlow(int start, int end) {
+        try {
+            return Double.parseDouble(ascii(start, end));
+        } catch (NumberFormatException e) {
+            notANumber = true;
+            return 0.0;
+        }
+    }
+
+    /**
+     * @return window[start, end) as String
+     */
+    private String ascii(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++)
+            bytes[i - start] = window.get(i);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b == '\n' || isBlank(b);
+    }
+
+    private static boolean isBlank(byte b) {
+        // \r belongs to \r\n line endings
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * Maps the window starting at the given position of the current window
+     */
+    private void remap(int position) throws IOException {
+        map(windowStart + position);
+    }
+
+    /**
+     * Maps the window starting at the given file offset
+     */
+    private void map(long start) throws IOException {
+        long length = Math.min(WINDOW_SIZE, rangeEnd - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        windowStart = start;
+        limit = (int) length;
+        lastWindow = start + length == rangeEnd;
+        pos = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (ownsChannel)
+            channel.close();
+    }
+}
@@ -0,0 +1,54 @@
+package de.laurenzgrote.rwth.kdtrees.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * DenseMatrixWriter. Writes a CLUTO dense matrix row by row:
+ * First line "rows columns", then one line of space separated values per row.
+ */
+public class DenseMatrixWriter implements MatrixWriter {
+
+    private final ByteOutput out;
+    private final int row_cnt, column_cnt;
+    private int rows;
+
+    /**
+     * Creates (or overwrites) a file and writes the header
+     * @param path       File to write to
+     * @param row_cnt    Number of rows which will be written
+     * @param column_cnt Number of columns
+     * @throws IOException IO Errors are not dealt with
+     */
+    public DenseMatrixWriter(Path path, int row_cnt, int column_cnt) throws IOException {
+        Files.deleteIfExists(path);
+        this.out = new ByteOutput(path);
+        this.row_cnt = row_cnt;
+        this.column_cnt = column_cnt;
+        out.put(row_cnt);
+        out.put(' ');
+        out.put(column_cnt);
+        out.put('\n');
+    }
+
+    @Override
+    public void writeRow(double[] values) throws IOException {
+        if (rows == row_cnt)
+            throw new IllegalStateException("All " + row_cnt + " rows were written already");
+        for (int column = 0; column < column_cnt; column++) {
+            if (column > 0)
+                out.put(' ');
+            out.put(values[column]);
+        }
+        out.put('\n');
+        rows++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+        if (rows != row_cnt)
+            throw new IllegalStateException("Only " + rows + " of " + row_cnt + " rows were written");
+    }
+}
@@ -0,0 +1,92 @@
+package de.laurenzgrote.rwth.kdtrees.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * DenseRowReader. Reads a dense matrix row by row from a stream (e.g. a live feed), syntax as in CLUTO dense matrix.
+ * 1st line: row_count column_count
+ * then space (or tab) seperated vector values, one row per line.
+ * The row count is not relied upon (0 if unknown): Rows are read until the stream ends.
+ * A malformatted row is reported, but the reader may go on with the next one.
+ */
+public class DenseRowReader implements AutoCloseable {
+
+    private final BufferedReader in;
+    // Name of the stream for error messages
+    private final Path source;
+    private int column_cnt = -1;
+    // Rows read so far (malformatted ones included)
+    private long row;
+
+    /**
+     * @param in     Stream to read from, closed with the reader
+     * @param source Name of the stream for error messages (e.g. "stdin")
+     */
+    public DenseRowReader(InputStream in, String source) {
+        this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+        this.source = Paths.get(source);
+    }
+
+    /**
+     * Reads the first line: row_count column_count
+     * @return column count
+     * @throws IOException IO Errors are not dealt with within the Reader
+     * @throws FileMalformattedException if the first line is missing or malformatted
+     */
+    public int readHeader() throws IOException, FileMalformattedException {
+        String line = in.readLine();
+        try {
+            String[] params = line.trim().split("\\s+");
+            int row_cnt = Integer.parseInt(params[0]);
+            column_cnt = Integer.parseInt(params[1]);
+            if (row_cnt < 0 || column_cnt < 1)
+                throw new NumberFormatException();
+            return column_cnt;
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException | NullPointerException e) {
+            throw new FileMalformattedException(source, "First line must be two integers (rows, columns)");
+        }
+    }
+
+    /**
+     * Reads the next row, blank lines are skipped
+     * @return values of the row, null at the end of the stream
+     * @throws IOException IO Errors are not dealt with within the Reader
+     * @throws FileMalformattedException if the row is malformatted (it is skipped, reading may go on)
+     */
+    public double[] next() throws IOException, FileMalformattedException {
+        String line;
+        do {
+            line = in.readLine();
+            if (line == null)
+                return null;
+            line = line.trim();
+        } while (line.isEmpty());
+        long current = row++;
+        String[] fields = line.split("\\s+");
+        // Same precedence of errors as DenseMatrixReader: dimension, number format, normalization
+        if (fields.length != column_cnt)
+            throw new FileMalformattedException(source, "Row " + current + " has wrong dimension");
+        double[] values = new double[column_cnt];
+        try {
+            for (int column = 0; column < column_cnt; column++)
+                values[column] = Double.parseDouble(fields[column]);
+        } catch (NumberFormatException e) {
+            throw new FileMalformattedException(source, "Row " + current + " contains non floating number values");
+        }
+        for (double d : values)
+            if (!(d >= 0.0 && d <= 1.0))
+                throw new FileMalformattedException(source, "Row " + current + ": Data point not normalized");
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,36 @@
+package de.laurenzgrote.rwth.kdtrees.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * LabelWriter. Writes one cluster label per row as 32 bit little endian int,
+ * in row order (the labels format of the ClusterWriter).
+ */
+public class LabelWriter implements AutoCloseable {
+
+    private final ByteOutput out;
+
+    /**
+     * Creates (or overwrites) a file
+     * @param path File to write to
+     * @throws IOException IO Errors are not dealt with
+     */
+    public LabelWriter(Path path) throws IOException {
+        Files.deleteIfExists(path);
+        this.out = new ByteOutput(path);
+    }
+
+    /**
+     * Appends the label of the next row
+     */
+    public void write(int label) throws IOException {
+        out.putBinary(label);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
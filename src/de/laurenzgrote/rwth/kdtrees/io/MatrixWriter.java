@@ -0,0 +1,24 @@
+package de.laurenzgrote.rwth.kdtrees.io;
+
+import java.io.IOException;
+
+/**
+ * MatrixWriter. Writes a matrix row by row, so it never has to be held in memory.
+ * The number of rows is announced upon creation.
+ */
+public interface MatrixWriter extends AutoCloseable {
+
+    /**
+     * Appends a row
+     * @param values one value per column
+     * @throws IOException IO Errors are not dealt with
+     */
+    void writeRow(double[] values) throws IOException;
+
+    /**
+     * Finishes the file
+     * @throws IllegalStateException if less rows than announced were written
+     */
+    @Override
+    void close() throws IOException;
+}
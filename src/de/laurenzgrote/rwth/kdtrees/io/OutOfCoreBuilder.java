@@ -0,0 +1,318 @@
+package de.laurenzgrote.rwth.kdtrees.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.laurenzgrote.rwth.kdtrees.data.Column;
+import de.laurenzgrote.rwth.kdtrees.data.DataMatrix;
+import de.laurenzgrote.rwth.kdtrees.data.DataSet;
+import de.laurenzgrote.rwth.kdtrees.data.ExternalTreeNode;
+import de.laurenzgrote.rwth.kdtrees.data.MaxdiffKDTreeNode;
+import de.laurenzgrote.rwth.kdtrees.data.NodeStatistics;
+import de.laurenzgrote.rwth.kdtrees.data.SnapshotTreeNode;
+import de.laurenzgrote.rwth.kdtrees.data.TreeNode;
+import de.laurenzgrote.rwth.kdtrees.data.TreeParameters;
+
+/**
+ * OutOfCoreBuilder. Builds a maxdiff tree of an input larger than the heap.
+ * Splits of nodes exceeding the memory budget are found by passes over their columns (see StreamingSearch),
+ * then the points are partitioned into spill files of the two children: a columnar matrix file of the values
+ * and a file of the input rows, both in input order. Once a node fits into the budget, it is built
+ * in memory like any MaxdiffKDTreeNode, written to a tree snapshot and mapped back, so it does not stay on the heap.
+ * Every node sees the same points in the same order as in memory, thus gets the same statistics and split:
+ * The leafs (and their numbering) are those of the in-memory construction.
+ * This does not hold if the parameters ask for sampling: Nodes split by passes always search exactly,
+ * and nodes built in memory draw other samples than at their position in an in-memory construction.
+ * Nodes split by passes are not reported to the listener of the parameters.
+ * The tree reads from the files in the spill directory, so it must not be used after the builder is closed.
+ */
+public class OutOfCoreBuilder implements AutoCloseable {
+
+    // Heap needed per point by a construction in memory:
+    // permutation, partition buffer, selection buffer and buckets of the gap search (sequential or parallel)
+    public static final int BYTES_PER_POINT = 32;
+
+    private final TreeParameters params;
+    private final Path spillDir;
+    // whether the spill directory was created by the builder
+    private final boolean ownsSpillDir;
+    // Largest node built in memory
+    private final int capacity;
+    // Files created so far
+    private final List<Path> files = new ArrayList<>();
+
+    /**
+     * @param params       Tresholds and parallelism of the construction
+     * @param spillDir     Directory for the spill files, null for a temporary one
+     * @param memoryBudget Heap (in bytes) a node may use for its construction
+     * @throws IOException if the spill directory can't be created
+     */
+    public OutOfCoreBuilder(TreeParameters params, Path spillDir, long memoryBudget) throws IOException {
+        long points = memoryBudget / BYTES_PER_POINT;
+        if (points < 2)
+            throw new IllegalArgumentException("Memory budget must hold at least two points");
+        this.params = params;
+        this.capacity = (int) Math.min(Integer.MAX_VALUE, points);
+        this.ownsSpillDir = spillDir == null;
+        this.spillDir = ownsSpillDir ? Files.createTempDirectory("kdtrees") : Files.createDirectories(spillDir);
+    }
+
+    /**
+     * Builds the tree of a matrix file. Columnar files are mapped,
+     * dense matrices are streamed into a columnar spill file first.
+     *
+     * @param input Dense matrix or columnar matrix file
+     * @return Root node
+     * @throws IOException IO Errors are not dealt with
+     * @throws FileMalformattedException Error if input does not meet its format
+     */
+    public TreeNode build(Path input) throws IOException, FileMalformattedException {
+        if (!ColumnarFormat.isColumnar(input)) {
+            Path converted = newFile(".kdc");
+            ColumnarFormat.convertDenseMatrix(input, converted, false);
+            input = converted;
+        }
+        return build(ColumnarFormat.map(input));
+    }
+
+    /**
+     * Builds the tree of a matrix, which should not live on the heap (e.g. a mapped file)
+     *
+     * @param matrix Input
+     * @return Root node
+     * @throws IOException IO Errors are not dealt with
+     */
+    public TreeNode build(DataMatrix matrix) throws IOException {
+        if (matrix.getLength() <= capacity)
+            return new MaxdiffKDTreeNode(matrix, params);
+        // One pass over all points and features
+        NodeStatistics stats = new NodeStatistics(matrix.getDim());
+        for (int row = 0; row < matrix.getLength(); row++)
+            stats.add(matrix, row);
+        return build(new Partition(matrix, null, stats, null, null));
+    }
+
+    /**
+     * Builds the subtree of a partition, like MaxdiffKDTreeNode would
+     */
+    private TreeNode build(Partition partition) throws IOException {
+        int length = partition.getLength();
+        if (length <= capacity)
+            return buildInMemory(partition);
+        DataMatrix points = partition.points;
+        NodeStatistics stats = partition.stats;
+        int minclustersize = DataSet.getMinClusterSize(length);
+        StreamingSearch search = new StreamingSearch(capacity);
+        // First try to split by maxdiff,
+        // if unsuccesful: Split by variance
+        if (length > 2 * minclustersize) {
+            double maxDiff = -1.0;
+            int maxDiffFeature = -1;
+            double pivot = 0.0;
+            int margin = Math.max(minclustersize, 1);
+            for (int feature = 0; feature < points.getDim(); feature++) {
+                // Gaps up to the treshold or the largest gap so far can't win, so they need no exact search
+                double floor = Math.max(params.getTreshMaxdiff(), maxDiff);
+                search.searchGap(points.getColumn(feature), length, margin,
+                        stats.getMinimum(feature), stats.getMaximum(feature), floor);
+                if (search.getGap() > maxDiff) {
+                    maxDiff = search.getGap();
+                    maxDiffFeature = feature;
+                    pivot = search.getPivot();
+                }
+            }
+            if (maxDiff > params.getTreshMaxdiff())
+                return split(partition, maxDiffFeature, pivot);
+
+            double maxVariance = -1.0;
+            int maxVarianceFeature = -1;
+            for (int feature = 0; feature < points.getDim(); feature++) {
+                double variance = stats.getVariance(feature);
+                if (variance >= params.getTreshVariance() && variance > maxVariance) {
+                    maxVariance = variance;
+                    maxVarianceFeature = feature;
+                }
+            }
+            if (maxVarianceFeature >= 0) {
+                double mean = search.select(points.getColumn(maxVarianceFeature), length, length / 2,
+                        stats.getMinimum(maxVarianceFeature), stats.getMaximum(maxVarianceFeature));
+                return split(partition, maxVarianceFeature, mean);
+            }
+        }
+        return leaf(partition);
+    }
+
+    /**
+     * Partitions the points into spill files of the children, which are built then
+     */
+    private TreeNode split(Partition partition, int feature, double value) throws IOException {
+        int length = partition.getLength();
+        int dim = partition.points.getDim();
+        Column column = partition.points.getColumn(feature);
+        int leftCnt = 0;
+        for (int point = 0; point < length; point++)
+            if (column.get(point) <= value)
+                leftCnt++;
+        // Degenerated split: Node is left as is
+        if (leftCnt == 0 || leftCnt == length)
+            return leaf(partition);
+
+        // Left is leq pivot, right is ge pivot, both in input order
+        Path leftValues = newFile(".kdc"), leftRows = newFile(".rows");
+        Path rightValues = newFile(".kdc"), rightRows = newFile(".rows");
+        NodeStatistics leftStats = new NodeStatistics(dim);
+        NodeStatistics rightStats = new NodeStatistics(dim);
+        double[] values = new double[dim];
+        try (ColumnarWriter leftOut = new ColumnarWriter(leftValues, leftCnt, dim, false);
+                ByteOutput leftRowOut = new ByteOutput(leftRows);
+                ColumnarWriter rightOut = new ColumnarWriter(rightValues, length - leftCnt, dim, false);
+                ByteOutput rightRowOut = new ByteOutput(rightRows)) {
+            for (int point = 0; point < length; point++) {
+                for (int f = 0; f < dim; f++)
+                    values[f] = partition.points.get(point, f);
+                if (values[feature] <= value) {
+                    leftOut.writeRow(values);
+                    leftRowOut.putBinary(partition.getRow(point));
+                    leftStats.add(partition.points, point);
+                } else {
+                    rightOut.writeRow(values);
+                    rightRowOut.putBinary(partition.getRow(point));
+                    rightStats.add(partition.points, point);
+                }
+            }
+        }
+        discard(partition);
+        TreeNode left = build(map(leftValues, leftRows, dim, leftStats));
+        TreeNode right = build(map(rightValues, rightRows, dim, rightStats));
+        return new ExternalTreeNode(partition.stats, left, right, feature, value);
+    }
+
+    /**
+     * Builds a partition fitting into the budget, its tree is mapped from a snapshot afterwards
+     */
+    private TreeNode buildInMemory(Partition partition) throws IOException {
+        MaxdiffKDTreeNode subtree = new MaxdiffKDTreeNode(partition.points, params);
+        if (partition.rows == null)
+            return subtree; // the whole input
+        Path snapshot = newFile(".kdt");
+        TreeSnapshot.write(subtree, snapshot, true, partition.rows);
+        discard(partition);
+        try {
+            return TreeSnapshot.load(snapshot);
+        } catch (FileMalformattedException e) {
+            throw new IOException("Snapshot of a partition could not be read back", e);
+        }
+    }
+
+    /**
+     * A partition which can't be split is read from its spill files
+     */
+    private TreeNode leaf(Partition partition) throws IOException {
+        IntBuffer[] rows = partition.rows;
+        if (rows == null) {
+            // The whole input is a single cluster
+            Path rowsFile = newFile(".rows");
+            try (ByteOutput out = new ByteOutput(rowsFile)) {
+                for (int row = 0; row < partition.getLength(); row++)
+                    out.putBinary(row);
+            }
+            rows = mapRows(rowsFile, partition.getLength());
+        }
+        return new SnapshotTreeNode(partition.points, true, rows, 0, partition.stats);
+    }
+
+    /**
+     * Maps the spill files of a partition
+     */
+    private static Partition map(Path valuesFile, Path rowsFile, int dim, NodeStatistics stats) throws IOException {
+        int length = stats.getLength();
+        Column[] columns;
+        try (FileChannel channel = FileChannel.open(valuesFile, StandardOpenOption.READ)) {
+            columns = ColumnarFormat.mapColumns(channel, ColumnarFormat.HEADER_SIZE, dim, length, Double.BYTES);
+        }
+        // Values were checked when the input was read
+        return new Partition(DataMatrix.ofTrusted(columns), mapRows(rowsFile, length), stats, valuesFile, rowsFile);
+    }
+
+    private static IntBuffer[] mapRows(Path rowsFile, int length) throws IOException {
+        try (FileChannel channel = FileChannel.open(rowsFile, StandardOpenOption.READ)) {
+            ByteBuffer[] segments = ColumnarFormat.mapSegments(channel, 0, length, Integer.BYTES);
+            IntBuffer[] rows = new IntBuffer[segments.length];
+            for (int segment = 0; segment < rows.length; segment++)
+                rows[segment] = segments[segment].asIntBuffer();
+            return rows;
+        }
+    }
+
+    /**
+     * @return new empty file in the spill directory, deleted upon close
+     */
+    private Path newFile(String suffix) throws IOException {
+        // Unique names, the directory may be shared
+        Path path = Files.createTempFile(spillDir, "spill-", suffix);
+        files.add(path);
+        return path;
+    }
+
+    /**
+     * Deletes the spill files of a partition, once its children are spilled or its tree is built.
+     * Some systems don't delete mapped files, these are left for close.
+     */
+    private static void discard(Partition partition) {
+        try {
+            if (partition.valuesFile != null)
+                Files.deleteIfExists(partition.valuesFile);
+            if (partition.rowsFile != null)
+                Files.deleteIfExists(partition.rowsFile);
+        } catch (IOException e) {
+            // still mapped
+        }
+    }
+
+    /**
+     * Deletes all spill files, the tree can't be used any more
+     */
+    @Override
+    public void close() throws IOException {
+        for (Path path : files)
+            Files.deleteIfExists(path);
+        files.clear();
+        if (ownsSpillDir)
+            Files.deleteIfExists(spillDir);
+    }
+
+    /**
+     * Points of a node: values and input rows in input order
+     */
+    private static final class Partition {
+        final DataMatrix points;
+        // Input row of every point in segments of Column.SEGMENT_SIZE, null if the points are the input rows
+        final IntBuffer[] rows;
+        final NodeStatistics stats;
+        // Spill files, null for the input
+        final Path valuesFile, rowsFile;
+
+        Partition(DataMatrix points, IntBuffer[] rows, NodeStatistics stats, Path valuesFile, Path rowsFile) {
+            this.points = points;
+            this.rows = rows;
+            this.stats = stats;
+            this.valuesFile = valuesFile;
+            this.rowsFile = rowsFile;
+        }
+
+        int getLength() {
+            return stats.getLength();
+        }
+
+        int getRow(int point) {
+            return rows == null ? point : rows[point >>> Column.SEGMENT_SHIFT].get(point & (Column.SEGMENT_SIZE - 1));
+        }
+    }
+}
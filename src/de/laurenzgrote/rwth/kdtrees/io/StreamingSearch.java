@@ -0,0 +1,259 @@
+package de.laurenzgrote.rwth.kdtrees.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import de.laurenzgrote.rwth.kdtrees.data.Column;
+import de.laurenzgrote.rwth.kdtrees.data.MaxGap;
+
+/**
+ * StreamingSearch. Exact order statistics and largest gaps of a column, found by sequential passes
+ * over it instead of a copy in memory. Every pass builds histograms of the value ranges still in question,
+ * keeping count, minimum and maximum of every bucket. Values of different buckets are ordered like the buckets,
+ * so only the buckets in question are looked at in the next pass. Once a range holds few enough values,
+ * they are collected and sorted.
+ * Memory is bounded by the capacity (about that many values), independent of the length of the column.
+ * Results are those of the in-memory search (Selection, MaxGap).
+ */
+class StreamingSearch {
+
+    private static final int MAX_BUCKETS = 1 << 16;
+
+    private final int capacity;
+
+    // Result of the last gap search
+    private double gap, lower, upper;
+
+    /**
+     * @param capacity Maximum number of values (or buckets) held at once, at least 2
+     */
+    StreamingSearch(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Selects the value of a rank
+     * @param column values, length of them are searched
+     * @param length number of values
+     * @param rank   rank of the value searched for (0: minimum)
+     * @param min    minimum of the values
+     * @param max    maximum of the values
+     * @return the value which would be at position rank after sorting
+     */
+    double select(Column column, int length, int rank, double min, double max) {
+        Range range = new Range(min, max, length);
+        int below = 0; // values less than range.low
+        while (range.low < range.high && range.count > capacity) {
+            range.buckets = Math.min(MAX_BUCKETS, capacity);
+            Histogram histogram = new Histogram(range);
+            for (int i = 0; i < length; i++)
+                histogram.add(column.get(i));
+            // Bucket holding the rank
+            int bucket = 0;
+            while (below + histogram.count[bucket] <= rank)
+                below += histogram.count[bucket++];
+            range = histogram.bucket(bucket);
+        }
+        if (range.low == range.high)
+            return range.low;
+        double[] values = new double[range.count];
+        int cnt = 0;
+        for (int i = 0; i < length; i++) {
+            double val = column.get(i);
+            if (range.contains(val))
+                values[cnt++] = val;
+        }
+        Arrays.sort(values);
+        return values[rank - below];
+    }
+
+    /**
+     * Searches the largest gap between two consecutive values, like MaxGap does.
+     * Only gaps greater than the floor are searched for exactly: If the largest gap does not exceed it,
+     * the result is some gap not exceeding it as well.
+     * @param column values, length of them are searched
+     * @param length number of values
+     * @param margin minimum number of values on each side of the gap (at least 1)
+     * @param min    minimum of the values
+     * @param max    maximum of the values
+     * @param floor  gaps not exceeding this are of no interest
+     */
+    void searchGap(Column column, int length, int margin, double min, double max, double floor) {
+        gap = 0.0;
+        lower = upper = Double.NaN;
+        if (length < 2 * margin)
+            return;
+        // Smallest and largest value which may border a gap
+        double lo = select(column, length, margin - 1, min, max);
+        double hi = select(column, length, length - margin, min, max);
+        lower = upper = lo;
+        if (hi <= lo)
+            return;
+        // Ranges whose inner gaps are still unknown, in ascending order
+        List<Range> open = new ArrayList<>();
+        open.add(new Range(lo, hi, Integer.MAX_VALUE));
+        while (true) {
+            // A range only contains gaps up to its width
+            open.removeIf(range -> range.high - range.low <= floor || range.high - range.low < gap);
+            if (open.isEmpty())
+                return;
+            // Plan the pass: collect small ranges, histograms of the others, as long as memory lasts
+            List<Range> pass = new ArrayList<>();
+            int slots = capacity;
+            for (Range range : open) {
+                if (range.count <= slots) {
+                    range.buckets = 0; // collect
+                    slots -= range.count;
+                } else if (slots >= 2) {
+                    range.buckets = Math.min(MAX_BUCKETS, slots);
+                    slots -= range.buckets;
+                } else {
+                    break;
+                }
+                pass.add(range);
+            }
+            // Pass over the column
+            double[] lows = new double[pass.size()];
+            Histogram[] histograms = new Histogram[pass.size()];
+            double[][] collected = new double[pass.size()][];
+            int[] collectedCnt = new int[pass.size()];
+            for (int r = 0; r < pass.size(); r++) {
+                Range range = pass.get(r);
+                lows[r] = range.low;
+                if (range.buckets == 0) {
+                    collected[r] = new double[range.count];
+                } else {
+                    histograms[r] = new Histogram(range);
+                }
+            }
+            for (int i = 0; i < length; i++) {
+                double val = column.get(i);
+                int r = Arrays.binarySearch(lows, val);
+                if (r < 0)
+                    r = -r - 2; // last range starting below val
+                if (r < 0 || !pass.get(r).contains(val))
+                    continue;
+                if (histograms[r] == null) {
+                    collected[r][collectedCnt[r]++] = val;
+                } else {
+                    histograms[r].add(val);
+                }
+            }
+            // Gaps found, and ranges for the next pass
+            open.removeAll(pass);
+            for (int r = 0; r < pass.size(); r++) {
+                if (histograms[r] == null) {
+                    double[] values = collected[r];
+                    Arrays.sort(values, 0, collectedCnt[r]);
+                    for (int i = 1; i < collectedCnt[r]; i++)
+                        consider(values[i - 1], values[i]);
+                } else {
+                    Histogram histogram = histograms[r];
+                    double prevMax = Double.NaN;
+                    for (int bucket = 0; bucket < histogram.count.length; bucket++) {
+                        if (histogram.count[bucket] == 0)
+                            continue; // empty
+                        if (!Double.isNaN(prevMax)) // not the first one
+                            consider(prevMax, histogram.min[bucket]);
+                        prevMax = histogram.max[bucket];
+                        if (histogram.min[bucket] < histogram.max[bucket])
+                            open.add(histogram.bucket(bucket));
+                    }
+                }
+            }
+            open.sort(Comparator.comparingDouble(range -> range.low));
+        }
+    }
+
+    /**
+     * Takes the gap between two consecutive values, if it is the largest so far.
+     * Of equal gaps, the lowest one wins (as the first one does in MaxGap).
+     */
+    private void consider(double below, double above) {
+        double diff = above - below;
+        if (diff > gap || (diff == gap && diff > 0.0 && below < lower)) {
+            gap = diff;
+            lower = below;
+            upper = above;
+        }
+    }
+
+    /**
+     * @return Size of the gap found by the last search (0 if none)
+     */
+    double getGap() {
+        return gap;
+    }
+
+    /**
+     * @return Value in the middle of the gap found by the last search (as in MaxGap)
+     */
+    double getPivot() {
+        return MaxGap.pivot(lower, upper);
+    }
+
+    /**
+     * Values in [low, high] of a column
+     */
+    private static final class Range {
+        final double low, high;
+        // Number of values in the range (an upper bound if not known)
+        final int count;
+        // Buckets of the next pass, 0 if the values are collected
+        int buckets;
+
+        Range(double low, double high, int count) {
+            this.low = low;
+            this.high = high;
+            this.count = count;
+        }
+
+        boolean contains(double val) {
+            return val >= low && val <= high;
+        }
+    }
+
+    /**
+     * Buckets of equal width over a range. The bucket of a value does not decrease with the value,
+     * so all values of a bucket are less than those of the following buckets.
+     */
+    private static final class Histogram {
+        private final double low, high, width;
+        final int[] count;
+        final double[] min, max;
+
+        Histogram(Range range) {
+            this.low = range.low;
+            this.high = range.high;
+            this.width = (range.high - range.low) / range.buckets;
+            this.count = new int[range.buckets];
+            this.min = new double[range.buckets];
+            this.max = new double[range.buckets];
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        }
+
+        /**
+         * Adds a value, if it lies in the range
+         */
+        void add(double val) {
+            if (!(val >= low && val <= high))
+                return;
+            int bucket = Math.min(count.length - 1, (int) ((val - low) / width));
+            count[bucket]++;
+            if (val < min[bucket])
+                min[bucket] = val;
+            if (val > max[bucket])
+                max[bucket] = val;
+        }
+
+        /**
+         * @return Range of the values of a bucket
+         */
+        Range bucket(int bucket) {
+            return new Range(min[bucket], max[bucket], count[bucket]);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package de.laurenzgrote.rwth.kdtrees.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.laurenzgrote.rwth.kdtrees.data.Column;
+import de.laurenzgrote.rwth.kdtrees.data.DataMatrix;
+import de.laurenzgrote.rwth.kdtrees.data.NodeStatistics;
+import de.laurenzgrote.rwth.kdtrees.data.SnapshotTreeNode;
+import de.laurenzgrote.rwth.kdtrees.data.TreeNode;
+
+/**
+ * TreeSnapshot. Binary file of a built tree, which is loaded without computing any split.
+ * The points of the leafs (in DFS order) form a permutation of the rows,
+ * so the points of every node are a range of it.
+ * All numbers are little endian. Header of 64 bytes:
+ *  0: magic "KDTS"
+ *  4: int32 version (1)
+ *  8: int32 dimension
+ * 12: int32 node count
+ * 16: int64 row count
+ * 24: int32 flags (1: values included)
+ * 28: int32 reserved (0)
+ * 32: int64 offset of the permutation
+ * 40: int64 offset of the values (0 if not included)
+ * 48: 16 bytes reserved (0)
+ * Then one record per node in DFS preorder (the root first):
+ * int32 split feature (-1 for leafs), int32 left child, int32 right child, int32 reserved,
+ * double split value, int64 first position in the permutation, int64 length,
+ * dimension doubles each of minimum, maximum, average and squared deviation.
+ * Then the permutation as row count int32,
+ * then (optionally) the values as dimension columns of row count doubles, in the order of the permutation.
+ */
+public abstract class TreeSnapshot {
+
+    static final int MAGIC = 0x5354444B; // "KDTS" little endian
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int FLAG_VALUES = 1;
+
+    /**
+     * Writes a snapshot of a built tree
+     * 
+     * @param root       Root node
+     * @param path       Output path (overwritten)
+     * @param withValues whether the values of the points are included, so the input is not needed for loading
+     * @throws IOException IO Errors are not dealt with
+     */
+    public static void write(TreeNode root, Path path, boolean withValues) throws IOException {
+        write(root, path, withValues, null);
+    }
+
+    /**
+     * Writes a snapshot of a tree built of a part of the input
+     * 
+     * @param root       Root node
+     * @param path       Output path (overwritten)
+     * @param withValues whether the values of the points are included
+     * @param inputRows  Input row of every row of the tree, in segments of Column.SEGMENT_SIZE (null: the same)
+     * @throws IOException IO Errors are not dealt with
+     */
+    static void write(TreeNode root, Path path, boolean withValues, IntBuffer[] inputRows) throws IOException {
+        int dim = root.getDim();
+        long rows = root.getLength();
+        List<TreeNode> nodes = new ArrayList<>();
+        List<TreeNode> leafs = new ArrayList<>();
+        collect(root, nodes, leafs);
+        long permutationOffset = HEADER_SIZE + (long) nodes.size() * recordSize(dim);
+        // Values start at a multiple of 8
+        long valuesOffset = withValues ? (permutationOffset + rows * Integer.BYTES + 7) / 8 * 8 : 0;
+
+        Files.deleteIfExists(path);
+        try (ByteOutput out = new ByteOutput(path)) {
+            out.putBinary(MAGIC);
+            out.putBinary(VERSION);
+            out.putBinary(dim);
+            out.putBinary(nodes.size());
+            out.putBinary(rows);
+            out.putBinary(withValues ? FLAG_VALUES : 0);
+            out.putBinary(0);
+            out.putBinary(permutationOffset);
+            out.putBinary(valuesOffset);
+            out.putBinary(0L);
+            out.putBinary(0L);
+
+            // Nodes, preorder: left child follows its parent, right one follows the left subtree
+            long from = 0;
+            for (int id = 0; id < nodes.size(); id++) {
+                TreeNode node = nodes.get(id);
+                if (node.getLeft() == null) {
+                    out.putBinary(-1);
+                    out.putBinary(-1);
+                    out.putBinary(-1);
+                } else {
+                    out.putBinary(node.getSplitFeature());
+                    out.putBinary(id + 1);
+                    out.putBinary(id + 2 * node.getLeft().getLeafCount()); // full binary subtree
+                }
+                out.putBinary(0);
+                out.putBinary(node.getSplitValue());
+                out.putBinary(from);
+                out.putBinary((long) node.getLength());
+                NodeStatistics stats = node.getStatistics();
+                for (int feature = 0; feature < dim; feature++)
+                    out.putBinary(stats.getMinimum(feature));
+                for (int feature = 0; feature < dim; feature++)
+                    out.putBinary(stats.getMaximum(feature));
+                for (int feature = 0; feature < dim; feature++)
+                    out.putBinary(stats.getAvg(feature));
+                for (int feature = 0; feature < dim; feature++)
+                    out.putBinary(stats.getSquaredDeviation(feature));
+                if (node.getLeft() == null)
+                    from += node.getLength();
+            }
+
+            // Permutation
+            for (TreeNode leaf : leafs)
+                for (int point = 0; point < leaf.getLength(); point++) {
+                    int row = leaf.getRow(point);
+                    out.putBinary(inputRows == null ? row
+                            : inputRows[row >>> Column.SEGMENT_SHIFT].get(row & (Column.SEGMENT_SIZE - 1)));
+                }
+            if (withValues) {
+                if (rows % 2 != 0)
+                    out.putBinary(0); // padding
+                for (int feature = 0; feature < dim; feature++)
+                    for (TreeNode leaf : leafs)
+                        for (int point = 0; point < leaf.getLength(); point++)
+                            out.putBinary(leaf.getData(point, feature));
+            }
+        }
+    }
+
+    /**
+     * DFS collecting all nodes in preorder and the leafs
+     */
+    private static void collect(TreeNode node, List<TreeNode> nodes, List<TreeNode> leafs) {
+        nodes.add(node);
+        if (node.getLeft() == null) {
+            leafs.add(node);
+        } else {
+            collect(node.getLeft(), nodes, leafs);
+            collect(node.getRight(), nodes, leafs);
+        }
+    }
+
+    private static int recordSize(int dim) {
+        return 40 + 4 * dim * Double.BYTES;
+    }
+
+    /**
+     * @param path File to check
+     * @return whether the file starts like a tree snapshot
+     * @throws IOException IO Errors are not dealt with
+     */
+    public static boolean isSnapshot(Path path) throws IOException {
+        return ColumnarFormat.readMagic(path) == MAGIC;
+    }
+
+    /**
+     * Loads a snapshot including the values of the points.
+     * Permutation and values are mapped, not copied onto the heap.
+     * 
+     * @param path File to read from
+     * @return Root node
+     * @throws IOException IO Errors are not dealt with
+     * @throws FileMalformattedException Error if file is no snapshot or contains no values
+     */
+    public static TreeNode load(Path path) throws FileMalformattedException, IOException {
+        return load(path, null);
+    }
+
+    /**
+     * Loads a snapshot, the values are read from the input matrix.
+     * Permutation is mapped, not copied onto the heap.
+     * 
+     * @param path   File to read from
+     * @param matrix Matrix the tree was built of, null to use the values of the snapshot
+     * @return Root node
+     * @throws IOException IO Errors are not dealt with
+     * @throws FileMalformattedException Error if file is no snapshot or does not fit the matrix
+     */
+    public static TreeNode load(Path path, DataMatrix matrix) throws FileMalformattedException, IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0);
+            if (header.hasRemaining() || header.getInt(0) != MAGIC)
+                throw new FileMalformattedException(path, "Not a tree snapshot");
+            if (header.getInt(4) != VERSION)
+                throw new FileMalformattedException(path, "Unsupported version " + header.getInt(4));
+            int dim = header.getInt(8);
+            int node_cnt = header.getInt(12);
+            long row_cnt = header.getLong(16);
+            boolean withValues = (header.getInt(24) & FLAG_VALUES) != 0;
+            long permutationOffset = header.getLong(32);
+            long valuesOffset = header.getLong(40);
+            if (dim < 1 || node_cnt < 1 || row_cnt < 1 || row_cnt > Integer.MAX_VALUE)
+                throw new FileMalformattedException(path, "Header must contain dimension, nodes and rows");
+            int rows = (int) row_cnt;
+            long end = withValues ? valuesOffset + (long) dim * rows * Double.BYTES : permutationOffset + (long) rows * Integer.BYTES;
+            if (permutationOffset < HEADER_SIZE + (long) node_cnt * recordSize(dim) || channel.size() < end)
+                throw new FileMalformattedException(path, "File is truncated");
+
+            // Values, either from the file or from the input
+            boolean pointOrder = matrix == null;
+            if (matrix == null) {
+                if (!withValues)
+                    throw new FileMalformattedException(path, "Snapshot contains no values, the input matrix is needed");
+                matrix = DataMatrix.ofTrusted(ColumnarFormat.mapColumns(channel, valuesOffset, dim, rows, Double.BYTES));
+            } else if (matrix.getDim() != dim || matrix.getLength() != rows) {
+                throw new FileMalformattedException(path, "Snapshot does not fit the input matrix");
+            }
+            ByteBuffer[] permutation = ColumnarFormat.mapSegments(channel, permutationOffset, rows, Integer.BYTES);
+            IntBuffer[] index = new IntBuffer[permutation.length];
+            for (int segment = 0; segment < index.length; segment++)
+                index[segment] = permutation[segment].asIntBuffer();
+
+            // Nodes
+            ByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+                    (long) node_cnt * recordSize(dim)).order(ByteOrder.LITTLE_ENDIAN);
+            SnapshotTreeNode[] nodes = new SnapshotTreeNode[node_cnt];
+            int[] features = new int[node_cnt], lefts = new int[node_cnt], rights = new int[node_cnt];
+            double[] splitValues = new double[node_cnt];
+            for (int id = 0; id < node_cnt; id++) {
+                features[id] = records.getInt();
+                lefts[id] = records.getInt();
+                rights[id] = records.getInt();
+                records.getInt();
+                splitValues[id] = records.getDouble();
+                long from = records.getLong();
+                long length = records.getLong();
+                if (from < 0 || length < 1 || from + length > rows)
+                    throw new FileMalformattedException(path, "Node " + id + " exceeds the permutation");
+                double[][] stats = new double[4][dim];
+                for (double[] stat : stats)
+                    for (int feature = 0; feature < dim; feature++)
+                        stat[feature] = records.getDouble();
+                nodes[id] = new SnapshotTreeNode(matrix, pointOrder, index, (int) from,
+                        new NodeStatistics((int) length, stats[0], stats[1], stats[2], stats[3]));
+            }
+            // Children have higher numbers than their parent, so link bottom up
+            for (int id = node_cnt - 1; id >= 0; id--) {
+                if (features[id] < 0)
+                    continue;
+                if (features[id] >= dim || lefts[id] <= id || rights[id] <= id
+                        || lefts[id] >= node_cnt || rights[id] >= node_cnt)
+                    throw new FileMalformattedException(path, "Node " + id + " has a malformatted split");
+                try {
+                    nodes[id].setChildren(nodes[lefts[id]], nodes[rights[id]], features[id], splitValues[id]);
+                } catch (IllegalArgumentException e) {
+                    throw new FileMalformattedException(path, "Node " + id + ": " + e.getMessage());
+                }
+            }
+            return nodes[0];
+            // Mappings stay valid after the channel is closed
+        }
+    }
+}
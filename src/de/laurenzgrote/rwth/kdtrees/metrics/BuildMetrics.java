@@ -0,0 +1,188 @@
+package de.laurenzgrote.rwth.kdtrees.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import de.laurenzgrote.rwth.kdtrees.data.BuildListener;
+import de.laurenzgrote.rwth.kdtrees.data.BuildPhase;
+import de.laurenzgrote.rwth.kdtrees.data.SplitType;
+
+/**
+ * BuildMetrics. BuildListener aggregating all nodes of one or more constructions:
+ * Nodes and points per split type, time per phase, allocated bytes and nodes per depth.
+ * May be used by parallel constructions, counters are updated without locking.
+ * Results are available as JMX MBean and as JSON summary.
+ */
+public class BuildMetrics implements BuildListener, BuildMetricsMXBean {
+
+    public static final String OBJECT_NAME = "de.laurenzgrote.rwth.kdtrees:type=BuildMetrics";
+    // Deeper nodes are counted in the last depth
+    private static final int MAX_DEPTH = 256;
+
+    private final LongAdder[] nodes = adders(SplitType.values().length);
+    private final LongAdder[] points = adders(SplitType.values().length);
+    private final LongAdder[] nanos = adders(BuildPhase.values().length);
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final AtomicLongArray depths = new AtomicLongArray(MAX_DEPTH);
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++)
+            adders[i] = new LongAdder();
+        return adders;
+    }
+
+    @Override
+    public void nodeBuilt(int depth, int size, SplitType split, long[] phaseNanos, long allocated) {
+        nodes[split.ordinal()].increment();
+        points[split.ordinal()].add(size);
+        for (int phase = 0; phase < phaseNanos.length; phase++)
+            if (phaseNanos[phase] != 0)
+                nanos[phase].add(phaseNanos[phase]);
+        if (allocated > 0)
+            allocatedBytes.add(allocated);
+        maxDepth.accumulateAndGet(depth, Math::max);
+        depths.incrementAndGet(Math.min(depth, MAX_DEPTH - 1));
+    }
+
+    /**
+     * Registers the metrics at the platform MBean server, under OBJECT_NAME
+     * @throws JMException if the name is taken already
+     */
+    public void register() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+    }
+
+    /**
+     * @param split Type of split
+     * @return Number of nodes split that way
+     */
+    public long getNodes(SplitType split) {
+        return nodes[split.ordinal()].sum();
+    }
+
+    /**
+     * @param split Type of split
+     * @return Points of all nodes split that way
+     */
+    public long getPoints(SplitType split) {
+        return points[split.ordinal()].sum();
+    }
+
+    /**
+     * @param phase Phase of a split
+     * @return Time spent in the phase in all nodes
+     */
+    public long getNanos(BuildPhase phase) {
+        return nanos[phase.ordinal()].sum();
+    }
+
+    @Override
+    public long getNodeCount() {
+        long sum = 0;
+        for (LongAdder adder : nodes)
+            sum += adder.sum();
+        return sum;
+    }
+
+    @Override
+    public int getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    @Override
+    public long getMaxdiffSplits() {
+        return getNodes(SplitType.MAXDIFF);
+    }
+
+    @Override
+    public long getVarianceSplits() {
+        return getNodes(SplitType.VARIANCE);
+    }
+
+    @Override
+    public long getLeafs() {
+        return getNodes(SplitType.LEAF);
+    }
+
+    @Override
+    public long getMaxdiffSearchNanos() {
+        return getNanos(BuildPhase.MAXDIFF_SEARCH);
+    }
+
+    @Override
+    public long getMedianSelectionNanos() {
+        return getNanos(BuildPhase.MEDIAN_SELECTION);
+    }
+
+    @Override
+    public long getPartitionNanos() {
+        return getNanos(BuildPhase.PARTITION);
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder adder : nodes)
+            adder.reset();
+        for (LongAdder adder : points)
+            adder.reset();
+        for (LongAdder adder : nanos)
+            adder.reset();
+        allocatedBytes.reset();
+        maxDepth.set(0);
+        for (int depth = 0; depth < MAX_DEPTH; depth++)
+            depths.set(depth, 0);
+    }
+
+    @Override
+    public String getSummaryJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"nodes\": ").append(getNodeCount());
+        json.append(",\n  \"maxDepth\": ").append(getMaxDepth());
+        json.append(",\n  \"splits\": {");
+        for (SplitType split : SplitType.values()) {
+            json.append(split.ordinal() == 0 ? "\n" : ",\n");
+            json.append("    \"").append(split.name().toLowerCase()).append("\": { \"nodes\": ")
+                    .append(getNodes(split)).append(", \"points\": ").append(getPoints(split)).append(" }");
+        }
+        json.append("\n  },\n  \"phaseNanos\": {");
+        for (BuildPhase phase : BuildPhase.values()) {
+            json.append(phase.ordinal() == 0 ? "\n" : ",\n");
+            json.append("    \"").append(phase.name().toLowerCase()).append("\": ").append(getNanos(phase));
+        }
+        json.append("\n  },\n  \"allocatedBytes\": ").append(getAllocatedBytes());
+        json.append(",\n  \"nodesPerDepth\": [");
+        int deepest = Math.min(getMaxDepth(), MAX_DEPTH - 1);
+        for (int depth = 0; depth <= deepest; depth++) {
+            if (depth > 0)
+                json.append(", ");
+            json.append(depths.get(depth));
+        }
+        json.append("]\n}\n");
+        return json.toString();
+    }
+
+    /**
+     * Writes the JSON summary to a file
+     * @param path Output path (overwritten)
+     * @throws IOException IO Errors are not dealt with
+     */
+    public void writeJson(Path path) throws IOException {
+        Files.write(path, getSummaryJson().getBytes(StandardCharsets.UTF_8));
+    }
+}
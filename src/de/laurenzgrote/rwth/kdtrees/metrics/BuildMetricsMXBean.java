@@ -0,0 +1,18 @@
+package de.laurenzgrote.rwth.kdtrees.metrics;
+
+/**
+ * BuildMetricsMXBean. Aggregated measurements of tree constructions, exported via JMX.
+ */
+public interface BuildMetricsMXBean {
+    long getNodeCount();
+    int getMaxDepth();
+    long getMaxdiffSplits();
+    long getVarianceSplits();
+    long getLeafs();
+    long getMaxdiffSearchNanos();
+    long getMedianSelectionNanos();
+    long getPartitionNanos();
+    long getAllocatedBytes();
+    String getSummaryJson();
+    void reset();
+}
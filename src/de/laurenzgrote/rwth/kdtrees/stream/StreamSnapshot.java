@@ -0,0 +1,109 @@
+package de.laurenzgrote.rwth.kdtrees.stream;
+
+import de.laurenzgrote.rwth.kdtrees.data.CompiledTree;
+import de.laurenzgrote.rwth.kdtrees.data.TreeNode;
+
+/**
+ * StreamSnapshot. Clustering of a stream at one point in time: Splits of the tree,
+ * size and average of every cluster. Instances are immutable and may be shared among threads,
+ * they are not affected by points arriving later.
+ */
+public final class StreamSnapshot {
+
+    private final CompiledTree tree;
+    private final int[] sizes;
+    // averages[cluster][feature]
+    private final double[][] averages;
+    private final long pointsSeen;
+    private final long timestamp;
+
+    /**
+     * Takes the clustering of a tree, which may change afterwards
+     * @param root       Root of the tree
+     * @param pointsSeen Number of points the stream delivered so far
+     * @param timestamp  Time of the snapshot (milliseconds since the epoch)
+     */
+    StreamSnapshot(TreeNode root, long pointsSeen, long timestamp) {
+        this.tree = new CompiledTree(root);
+        this.sizes = new int[root.getLeafCount()];
+        this.averages = new double[sizes.length][];
+        collect(root, 0);
+        this.pointsSeen = pointsSeen;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * DFS over the leafs, left child first (as clusters are numbered)
+     * @return Next cluster number
+     */
+    private int collect(TreeNode node, int cluster) {
+        if (node.getLeft() != null)
+            return collect(node.getRight(), collect(node.getLeft(), cluster));
+        sizes[cluster] = node.getLength();
+        averages[cluster] = new double[node.getDim()];
+        for (int feature = 0; feature < node.getDim(); feature++)
+            averages[cluster][feature] = node.getAvg(feature);
+        return cluster + 1;
+    }
+
+    /**
+     * @return Splits of the tree, for classifying points
+     */
+    public CompiledTree getTree() {
+        return tree;
+    }
+
+    /**
+     * @param point Values of all features
+     * @return Number of the cluster the point belongs to
+     */
+    public int classify(double[] point) {
+        return tree.classify(point);
+    }
+
+    /**
+     * @return Number of clusters
+     */
+    public int getClusterCount() {
+        return sizes.length;
+    }
+
+    /**
+     * @return Number of clustered points in a cluster (see getLength)
+     */
+    public int getClusterSize(int cluster) {
+        return sizes[cluster];
+    }
+
+    /**
+     * @return Average value of a feature in a cluster
+     */
+    public double getAvg(int cluster, int feature) {
+        return averages[cluster][feature];
+    }
+
+    /**
+     * @return Number of points clustered: the latest window points and up to window older ones,
+     * which are dropped at the next rebuild (see StreamingClusterer)
+     */
+    public int getLength() {
+        int length = 0;
+        for (int size : sizes)
+            length += size;
+        return length;
+    }
+
+    /**
+     * @return Number of points the stream delivered up to the snapshot
+     */
+    public long getPointsSeen() {
+        return pointsSeen;
+    }
+
+    /**
+     * @return Time of the snapshot (milliseconds since the epoch)
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,134 @@
+package de.laurenzgrote.rwth.kdtrees.stream;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.laurenzgrote.rwth.kdtrees.data.Column;
+import de.laurenzgrote.rwth.kdtrees.data.DataMatrix;
+import de.laurenzgrote.rwth.kdtrees.data.DataPoint;
+import de.laurenzgrote.rwth.kdtrees.data.DataPointMalformattedException;
+import de.laurenzgrote.rwth.kdtrees.data.MaxdiffKDTreeNode;
+import de.laurenzgrote.rwth.kdtrees.data.TreeNode;
+import de.laurenzgrote.rwth.kdtrees.data.TreeParameters;
+
+/**
+ * StreamingClusterer. Clusters an endless stream of points, folded in by mini-batches.
+ * Only the latest points are clustered: Points of a batch are inserted into the tree
+ * (see MaxdiffKDTreeNode.insert), once the tree holds twice the window it is rebuilt of the window alone.
+ * Points are dropped by rebuilding only, so the tree holds the latest window points plus
+ * up to window points older than that, i.e. between window and twice the window points
+ * (fewer only until window points were seen).
+ * So memory is bounded by about three windows of points, no matter how long the stream runs.
+ *
+ * Batches are folded by a single thread, which also publishes snapshots of the clustering.
+ * Any thread may read the latest snapshot at any time, without locking and without delaying the folding.
+ */
+public class StreamingClusterer {
+
+    private final int dim;
+    private final int window;
+    private final TreeParameters params;
+    // Latest window points, column-wise ring buffer
+    private final double[][] ring;
+    private int ringPos;
+    private long pointsSeen;
+    // Tree of the window and the points inserted since it was built, null while it is to be rebuilt
+    private MaxdiffKDTreeNode tree;
+    private final AtomicReference<StreamSnapshot> snapshot = new AtomicReference<>();
+
+    /**
+     * @param dim    Dimension of the points
+     * @param window Number of latest points clustered at least, at most twice as many are
+     * @param params Tresholds and parallelism of the construction
+     * @throws IllegalArgumentException if dimension or window are not positive
+     */
+    public StreamingClusterer(int dim, int window, TreeParameters params) {
+        if (dim < 1 || window < 1)
+            throw new IllegalArgumentException("Dimension and window must be positive");
+        this.dim = dim;
+        this.window = window;
+        this.params = params;
+        this.ring = new double[dim][window];
+    }
+
+    /**
+     * Folds a batch of points into the clustering. Only the folding thread may call this.
+     * @param batch Points of the dimension of the stream, normalized
+     * @throws DataPointMalformattedException if a point has the wrong dimension or is not normalized,
+     *                                        the points before it are folded in
+     */
+    public void fold(List<double[]> batch) throws DataPointMalformattedException {
+        try {
+            for (double[] values : batch) {
+                DataPoint point = new DataPoint(values);
+                if (point.getDim() != dim)
+                    throw new DataPointMalformattedException("Data Point has wrong dimension", point);
+                for (int feature = 0; feature < dim; feature++)
+                    ring[feature][ringPos] = values[feature];
+                ringPos = (ringPos + 1) % window;
+                pointsSeen++;
+                if (tree != null && tree.getLength() < 2 * window)
+                    tree.insert(point);
+                else
+                    tree = null; // rebuilt after the batch
+            }
+        } finally {
+            if (tree == null && pointsSeen > 0)
+                tree = new MaxdiffKDTreeNode(windowMatrix(), params);
+        }
+    }
+
+    /**
+     * @return Latest window points, oldest first
+     */
+    private DataMatrix windowMatrix() {
+        int length = (int) Math.min(pointsSeen, window);
+        // Oldest point of the window, the ring is full once more than window points were seen
+        int first = pointsSeen > window ? ringPos : 0;
+        Column[] columns = new Column[dim];
+        for (int feature = 0; feature < dim; feature++) {
+            double[] values = new double[length];
+            int tail = Math.min(length, window - first);
+            System.arraycopy(ring[feature], first, values, 0, tail);
+            System.arraycopy(ring[feature], 0, values, tail, length - tail);
+            columns[feature] = Column.of(values);
+        }
+        // Checked upon folding
+        return DataMatrix.ofTrusted(columns);
+    }
+
+    /**
+     * Publishes a snapshot of the current clustering. Only the folding thread may call this.
+     * @return The snapshot, null if no point was folded yet
+     */
+    public StreamSnapshot publish() {
+        if (tree == null)
+            return null;
+        StreamSnapshot current = new StreamSnapshot(tree, pointsSeen, System.currentTimeMillis());
+        snapshot.set(current);
+        return current;
+    }
+
+    /**
+     * May be called by any thread
+     * @return Latest published snapshot, null if none was published yet
+     */
+    public StreamSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Current tree, which changes with every batch. Only the folding thread may use it.
+     * @return Tree of the window and of the points inserted since it was built, null if no point was folded yet
+     */
+    public TreeNode getTree() {
+        return tree;
+    }
+
+    /**
+     * @return Number of points folded so far
+     */
+    public long getPointsSeen() {
+        return pointsSeen;
+    }
+}